@@ -0,0 +1,433 @@
+package game1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// small self-contained CDCL SAT solver: two watched literals, VSIDS on a binary heap,
+// first-UIP learning, Luby restarts and phase saving. solve() takes assumptions, so the
+// clause database (learnt clauses included) stays valid from one call to the next.
+// literals are 2 * var for the variable and 2 * var + 1 for its negation
+class CdclSolver {
+    enum Status { SAT, UNSAT, UNKNOWN }
+
+    final int numVars;
+
+    // clause database. problem clauses come first, learnt ones are appended and
+    // thinned out on restarts (see reduceLearnts)
+    List<int[]> clauses = new ArrayList<>();
+    List<Boolean> learnt = new ArrayList<>();
+    int numLearnts = 0;
+    int maxLearnts;
+    boolean ok = true; // false once the clauses alone are unsatisfiable
+
+    // watches[lit] = clauses watching lit (it is one of their first two literals)
+    int[][] watches;
+    int[] watchSize;
+
+    // assignment
+    final byte[] value;  // per variable: 0 unassigned, 1 true, -1 false
+    final int[] level, reason;
+    final int[] trail;
+    int trailSize = 0, qhead = 0;
+    int[] trailLim = new int[16];
+    int decisionLevel = 0;
+    final boolean[] phase; // last value of each variable, reused on the next decision
+
+    // VSIDS
+    final double[] activity;
+    double varInc = 1.0;
+    static final double VAR_DECAY = 0.95;
+    final int[] heap, heapIndex;
+    int heapSize = 0;
+
+    // analysis scratch
+    final boolean[] seen;
+    int[] learntBuf;
+
+    // statistics
+    public long conflicts = 0, decisions = 0, propagations = 0, restarts = 0;
+
+    CancelToken cancel; // polled once per conflict
+
+    public CdclSolver(int numVars) {
+        this.numVars = numVars;
+        this.value = new byte[numVars];
+        this.level = new int[numVars];
+        this.reason = new int[numVars];
+        this.trail = new int[numVars];
+        this.phase = new boolean[numVars];
+        this.activity = new double[numVars];
+        this.heap = new int[numVars];
+        this.heapIndex = new int[numVars];
+        this.seen = new boolean[numVars];
+        this.learntBuf = new int[16];
+        this.watches = new int[2 * numVars][];
+        this.watchSize = new int[2 * numVars];
+        for (int v = 0; v < numVars; v++) {
+            heapIndex[v] = -1;
+            heapInsert(v);
+        }
+    }
+
+    public static int pos(int var) { return 2 * var; }
+    public static int neg(int var) { return 2 * var + 1; }
+
+    private static int var(int lit) { return lit >> 1; }
+
+    private int valueOf(int lit) {
+        int v = value[lit >> 1];
+        return (lit & 1) == 0 ? v : -v;
+    }
+
+    // adds a problem clause; only allowed between solve calls
+    public void addClause(int... lits) {
+        if (!ok) return;
+        cancelUntil(0);
+        int[] c = lits.clone();
+        if (c.length == 0) {
+            ok = false;
+            return;
+        }
+        if (c.length == 1) {
+            int val = valueOf(c[0]);
+            if (val == -1) ok = false;
+            else if (val == 0) {
+                enqueue(c[0], -1);
+                if (propagate() != -1) ok = false;
+            }
+            return;
+        }
+        attach(c, false);
+    }
+
+    public Status solve(int... assumptions) {
+        if (!ok) return Status.UNSAT;
+        cancelUntil(0);
+        if (propagate() != -1) {
+            ok = false;
+            return Status.UNSAT;
+        }
+        if (maxLearnts == 0) maxLearnts = Math.max(1000, clauses.size() / 3);
+
+        int restart = 0;
+        while (true) {
+            long budget = 100L * luby(restart++);
+            Status st = search(assumptions, budget);
+            if (st != null) return st;
+            restarts++;
+            cancelUntil(0);
+            if (numLearnts > maxLearnts) {
+                reduceLearnts();
+                maxLearnts += maxLearnts / 10;
+            }
+        }
+    }
+
+    // value of a variable in the last model (valid until the next call)
+    public boolean modelValue(int var) {
+        return value[var] == 1;
+    }
+
+    // null = restart
+    private Status search(int[] assumptions, long budget) {
+        long conflictsHere = 0;
+        while (true) {
+            int confl = propagate();
+            if (confl != -1) {
+                conflicts++;
+                conflictsHere++;
+                if (decisionLevel == 0) {
+                    ok = false;
+                    return Status.UNSAT;
+                }
+                if (cancel != null && cancel.isCancelled()) {
+                    cancelUntil(0);
+                    return Status.UNKNOWN;
+                }
+                int learntSize = analyze(confl);
+                int btLevel = 0;
+                for (int i = 1; i < learntSize; i++) btLevel = Math.max(btLevel, level[var(learntBuf[i])]);
+                cancelUntil(btLevel);
+                if (learntSize == 1) {
+                    enqueue(learntBuf[0], -1);
+                } else {
+                    // the literal from the backjump level goes to slot 1 so it is watched
+                    for (int i = 2; i < learntSize; i++) {
+                        if (level[var(learntBuf[i])] == btLevel) {
+                            int t = learntBuf[1];
+                            learntBuf[1] = learntBuf[i];
+                            learntBuf[i] = t;
+                            break;
+                        }
+                    }
+                    int ci = attach(Arrays.copyOf(learntBuf, learntSize), true);
+                    enqueue(learntBuf[0], ci);
+                }
+                varInc /= VAR_DECAY;
+                continue;
+            }
+
+            if (conflictsHere >= budget) return null;
+
+            // assumptions are the first decisions, one level each
+            int next = -1;
+            while (decisionLevel < assumptions.length) {
+                int a = assumptions[decisionLevel];
+                int val = valueOf(a);
+                if (val == 1) {
+                    newDecisionLevel();
+                } else if (val == -1) {
+                    return Status.UNSAT; // only under these assumptions, the clauses stay fine
+                } else {
+                    next = a;
+                    break;
+                }
+            }
+
+            if (next == -1) {
+                int v = pickBranchVar();
+                if (v == -1) return Status.SAT;
+                decisions++;
+                next = phase[v] ? pos(v) : neg(v);
+            }
+            newDecisionLevel();
+            enqueue(next, -1);
+        }
+    }
+
+    // unit propagation over the watch lists. returns a conflicting clause or -1
+    private int propagate() {
+        while (qhead < trailSize) {
+            int p = trail[qhead++];
+            int falseLit = p ^ 1;
+            int[] ws = watches[falseLit];
+            int n = watchSize[falseLit];
+            int i = 0, j = 0;
+            propagations++;
+            while (i < n) {
+                int ci = ws[i++];
+                int[] c = clauses.get(ci);
+                if (c[0] == falseLit) {
+                    c[0] = c[1];
+                    c[1] = falseLit;
+                }
+                if (valueOf(c[0]) == 1) {
+                    ws[j++] = ci;
+                    continue;
+                }
+                boolean moved = false;
+                for (int k = 2; k < c.length; k++) {
+                    if (valueOf(c[k]) != -1) {
+                        c[1] = c[k];
+                        c[k] = falseLit;
+                        watch(c[1], ci);
+                        moved = true;
+                        break;
+                    }
+                }
+                if (moved) continue;
+
+                ws[j++] = ci;
+                if (valueOf(c[0]) == -1) {
+                    while (i < n) ws[j++] = ws[i++];
+                    watchSize[falseLit] = j;
+                    qhead = trailSize;
+                    return ci;
+                }
+                enqueue(c[0], ci);
+            }
+            watchSize[falseLit] = j;
+        }
+        return -1;
+    }
+
+    // first-UIP conflict analysis into learntBuf, asserting literal first. returns the size
+    private int analyze(int confl) {
+        int size = 1;
+        int pathCount = 0;
+        int p = -1;
+        int index = trailSize - 1;
+        do {
+            int[] c = clauses.get(confl);
+            for (int k = p == -1 ? 0 : 1; k < c.length; k++) {
+                int q = c[k];
+                int v = var(q);
+                if (seen[v] || level[v] == 0) continue;
+                seen[v] = true;
+                bump(v);
+                if (level[v] >= decisionLevel) {
+                    pathCount++;
+                } else {
+                    if (size == learntBuf.length) learntBuf = Arrays.copyOf(learntBuf, size * 2);
+                    learntBuf[size++] = q;
+                }
+            }
+            while (!seen[var(trail[index])]) index--;
+            p = trail[index--];
+            confl = reason[var(p)];
+            seen[var(p)] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        learntBuf[0] = p ^ 1;
+        for (int i = 1; i < size; i++) seen[var(learntBuf[i])] = false;
+        return size;
+    }
+
+    private int attach(int[] c, boolean isLearnt) {
+        int ci = clauses.size();
+        clauses.add(c);
+        learnt.add(isLearnt);
+        if (isLearnt) numLearnts++;
+        watch(c[0], ci);
+        watch(c[1], ci);
+        return ci;
+    }
+
+    private void watch(int lit, int ci) {
+        int[] ws = watches[lit];
+        if (ws == null) ws = watches[lit] = new int[4];
+        else if (watchSize[lit] == ws.length) ws = watches[lit] = Arrays.copyOf(ws, ws.length * 2);
+        ws[watchSize[lit]++] = ci;
+    }
+
+    private void enqueue(int lit, int from) {
+        int v = var(lit);
+        value[v] = (byte) ((lit & 1) == 0 ? 1 : -1);
+        level[v] = decisionLevel;
+        reason[v] = from;
+        trail[trailSize++] = lit;
+    }
+
+    private void newDecisionLevel() {
+        if (decisionLevel == trailLim.length) trailLim = Arrays.copyOf(trailLim, decisionLevel * 2);
+        trailLim[decisionLevel++] = trailSize;
+    }
+
+    private void cancelUntil(int lvl) {
+        if (decisionLevel <= lvl) return;
+        for (int i = trailSize - 1; i >= trailLim[lvl]; i--) {
+            int v = var(trail[i]);
+            phase[v] = value[v] == 1;
+            value[v] = 0;
+            reason[v] = -1;
+            if (heapIndex[v] == -1) heapInsert(v);
+        }
+        trailSize = trailLim[lvl];
+        qhead = trailSize;
+        decisionLevel = lvl;
+    }
+
+    // drops the longer half of the learnt clauses. only called at level 0, where no
+    // reason is ever looked at again, so the database can be compacted freely
+    private void reduceLearnts() {
+        int[] lengths = new int[numLearnts];
+        int m = 0;
+        for (int i = 0; i < clauses.size(); i++) {
+            if (learnt.get(i)) lengths[m++] = clauses.get(i).length;
+        }
+        Arrays.sort(lengths);
+        int cut = lengths[m / 2];
+
+        List<int[]> kept = new ArrayList<>(clauses.size());
+        List<Boolean> keptLearnt = new ArrayList<>(clauses.size());
+        int kept2 = 0;
+        for (int i = 0; i < clauses.size(); i++) {
+            int[] c = clauses.get(i);
+            if (learnt.get(i) && (c.length > cut || (c.length == cut && kept2 >= m / 2))) continue;
+            if (learnt.get(i)) kept2++;
+            kept.add(c);
+            keptLearnt.add(learnt.get(i));
+        }
+        clauses = kept;
+        learnt = keptLearnt;
+        numLearnts = kept2;
+        Arrays.fill(watchSize, 0);
+        for (int i = 0; i < clauses.size(); i++) {
+            watch(clauses.get(i)[0], i);
+            watch(clauses.get(i)[1], i);
+        }
+        for (int i = 0; i < trailSize; i++) reason[var(trail[i])] = -1;
+    }
+
+    private int pickBranchVar() {
+        while (heapSize > 0) {
+            int v = heapRemoveMax();
+            if (value[v] == 0) return v;
+        }
+        return -1;
+    }
+
+    private void bump(int v) {
+        activity[v] += varInc;
+        if (activity[v] > 1e100) {
+            for (int i = 0; i < numVars; i++) activity[i] *= 1e-100;
+            varInc *= 1e-100;
+        }
+        if (heapIndex[v] != -1) siftUp(heapIndex[v]);
+    }
+
+    // 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, ...
+    static long luby(int i) {
+        int size = 1, seq = 0;
+        while (size < i + 1) {
+            seq++;
+            size = 2 * size + 1;
+        }
+        int x = i;
+        while (size - 1 != x) {
+            size = (size - 1) >> 1;
+            seq--;
+            x = x % size;
+        }
+        return 1L << seq;
+    }
+
+    // ---- max-heap of variables by activity ----
+
+    private void heapInsert(int v) {
+        heapIndex[v] = heapSize;
+        heap[heapSize++] = v;
+        siftUp(heapSize - 1);
+    }
+
+    private int heapRemoveMax() {
+        int top = heap[0];
+        heapIndex[top] = -1;
+        int last = heap[--heapSize];
+        if (heapSize > 0) {
+            heap[0] = last;
+            heapIndex[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int i) {
+        int v = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (activity[heap[parent]] >= activity[v]) break;
+            heap[i] = heap[parent];
+            heapIndex[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        heapIndex[v] = i;
+    }
+
+    private void siftDown(int i) {
+        int v = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]]) child++;
+            if (activity[heap[child]] <= activity[v]) break;
+            heap[i] = heap[child];
+            heapIndex[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = v;
+        heapIndex[v] = i;
+    }
+}
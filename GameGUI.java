@@ -13,27 +13,37 @@ import java.awt.RenderingHints;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 
 import game1.BotMoveResult;
 import game1.BotStrategy;
-import game1.Cell;
+import game1.CancelToken;
 import game1.GameGraph;
+import game1.MapFile;
+import game1.MapGrid;
 import game1.Region;
 import game1.mapgeneration;
 
@@ -41,9 +51,23 @@ import game1.mapgeneration;
 class GameGUI extends JFrame {
  GameGraph graph;
  BotStrategy bot;
- Cell[][] grid;
+ MapGrid grid;
  int gridRows, gridCols;
+ int numRegions, numColors;
  int cellSize = 20;
+ // seed of the next map, null = unseeded (see MapColoring.main). a seeded map is grown tile
+ // by tile and the same seed gives the same map and clues on any machine; every new game
+ // moves on to a seed derived from the last one
+ Long seed;
+
+ // bot moves run one at a time off the EDT, on the bot's own copy of the board
+ ExecutorService botExecutor = Executors.newSingleThreadExecutor(r -> {
+     Thread t = new Thread(r, "bot");
+     t.setDaemon(true);
+     return t;
+ });
+ CancelToken botMove; // move in flight, null when idle
+ CancelToken idleWork; // speculative stage while it's the human's turn, see startIdleWork
 
  boolean isHumanTurn = true;
  int selectedColor = -1;
@@ -70,51 +94,116 @@ class GameGUI extends JFrame {
  Color TINT_SEAM = new Color(255, 40, 40, 130);
 
  public GameGUI(int numRegions, int numColors, int gridRows, int gridCols) {
-     mapgeneration gen = new mapgeneration(gridRows, gridCols);
-     List<Region> regions = gen.generateRegions(numRegions);
-     this.grid = gen.getGrid();
+     this(numRegions, numColors, gridRows, gridCols, null);
+ }
+
+ public GameGUI(int numRegions, int numColors, int gridRows, int gridCols, Long seed) {
+     this.numRegions = numRegions;
+     this.numColors = numColors;
      this.gridRows = gridRows;
      this.gridCols = gridCols;
-     this.graph = new GameGraph(regions, grid, gridRows, gridCols, numColors);
-     
-     lockInitialRegions();
-     this.bot = new BotStrategy(graph);
+     this.seed = seed;
+     newMap();
      
      buildGUI();
+     startIdleWork();
+ }
+
+ // opens a saved map instead of generating one, see MapFile
+ public GameGUI(MapFile map) {
+     checkColors(map);
+     useMap(map);
+     buildGUI();
+     startIdleWork();
+ }
+
+ // maps bigger than one tile are always grown in parallel; their seed is logged so they
+ // can be played again
+ private void newMap() {
+     mapgeneration gen;
+     List<Region> regions;
+     Random rnd;
+     if (seed != null || (long) gridRows * gridCols > (long) mapgeneration.TILE_SIZE * mapgeneration.TILE_SIZE) {
+         long s = seed != null ? seed : new Random().nextLong();
+         System.out.println("Map seed " + s);
+         gen = new mapgeneration(gridRows, gridCols, s);
+         regions = gen.generateTiled(numRegions, s);
+         rnd = new Random(s);
+         if (seed != null) seed = new SplittableRandom(s).nextLong();
+     } else {
+         gen = new mapgeneration(gridRows, gridCols);
+         regions = gen.generateRegions(numRegions);
+         rnd = new Random();
+     }
+     this.grid = gen.getGrid();
+     this.graph = new GameGraph(regions, grid, numColors);
+     
+     lockInitialRegions(rnd);
+     startBot();
+ }
+
+ // a map needs a paint color for each of its colors and, once the buttons are
+ // built, exactly one button each
+ private void checkColors(MapFile map) {
+     int k = map.getGraph().getNumColors();
+     if (colorButtons == null && k > COLORS.length) {
+         throw new IllegalArgumentException("the map is for " + k + " colors, at most " + COLORS.length + " are supported");
+     }
+     if (colorButtons != null && k != colorButtons.length) {
+         throw new IllegalArgumentException("the map is for " + k + " colors, this game has " + colorButtons.length);
+     }
+ }
+
+ private void useMap(MapFile map) {
+     this.grid = map.getGrid();
+     this.graph = map.getGraph();
+     this.numRegions = graph.size();
+     this.numColors = graph.getNumColors();
+     this.gridRows = grid.getRows();
+     this.gridCols = grid.getCols();
+     startBot();
+ }
+
+ private void startBot() {
+     // the bot never touches the board on screen, see onClickMap
+     this.bot = new BotStrategy(new GameGraph(graph));
+     bot.safety.setListener(() -> SwingUtilities.invokeLater(this::showHoverHint));
  }
 
  // randomly lock some regions as clues
- private void lockInitialRegions() {
-     Random rnd = new Random();
+ private void lockInitialRegions(Random rnd) {
      List<Region> regions = graph.getRegions();
      int nc = graph.getNumColors();
      int numToLock = Math.max(nc, regions.size() / 5);
 
      List<Integer> avail = new ArrayList<>();
      for (int i = 0; i < regions.size(); i++) avail.add(i);
-     Collections.shuffle(avail);
+     Collections.shuffle(avail, rnd);
+     int next = 0, locked = countLocked();
 
      // ensure at least one of each color is present if possible
-     for (int color = 0; color < nc && !avail.isEmpty(); color++) {
-         int rid = avail.remove(0);
+     for (int color = 0; color < nc && next < avail.size(); color++) {
+         int rid = avail.get(next++);
          Region r = regions.get(rid);
          if (graph.availableColors(rid).contains(color)) {
-             r.color = color;
+             graph.setColor(rid, color);
              r.isLocked = true;
+             locked++;
          }
      }
      
      // lock more random regions
-     while (!avail.isEmpty() && countLocked() < numToLock) {
-         int rid = avail.remove(0);
+     while (next < avail.size() && locked < numToLock) {
+         int rid = avail.get(next++);
          Region r = regions.get(rid);
          Set<Integer> ok = graph.availableColors(rid);
          if (!ok.isEmpty()) {
              // pick a random valid color
              Integer[] arr = ok.toArray(new Integer[0]);
              int c = arr[rnd.nextInt(arr.length)];
-             r.color = c;
+             graph.setColor(rid, c);
              r.isLocked = true;
+             locked++;
          }
      }
  }
@@ -131,6 +220,13 @@ class GameGUI extends JFrame {
      setTitle("Map Coloring Game");
      setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
      setLayout(new BorderLayout(8, 8));
+     addWindowListener(new WindowAdapter() {
+         @Override
+         public void windowClosing(WindowEvent e) {
+             cancelBotWork();
+             botExecutor.shutdownNow();
+         }
+     });
 
      JPanel top = new JPanel(new GridLayout(3, 1));
      top.setBackground(new Color(240, 240, 240));
@@ -164,6 +260,21 @@ class GameGUI extends JFrame {
          colorPanel.add(btn);
      }
 
+     JButton newGameBtn = new JButton("New Game");
+     newGameBtn.setPreferredSize(new Dimension(100, 48));
+     newGameBtn.addActionListener(e -> newGame());
+     colorPanel.add(newGameBtn);
+
+     JButton saveBtn = new JButton("Save Map");
+     saveBtn.setPreferredSize(new Dimension(100, 48));
+     saveBtn.addActionListener(e -> saveMap());
+     colorPanel.add(saveBtn);
+
+     JButton loadBtn = new JButton("Load Map");
+     loadBtn.setPreferredSize(new Dimension(100, 48));
+     loadBtn.addActionListener(e -> loadMap());
+     colorPanel.add(loadBtn);
+
      add(colorPanel, BorderLayout.SOUTH);
 
      mapPanel = new JPanel() {
@@ -230,29 +341,43 @@ class GameGUI extends JFrame {
      int row = (my - 50) / cellSize;
 
      if (row >= 0 && row < gridRows && col >= 0 && col < gridCols) {
-         int rid = grid[row][col].regionId;
+         int rid = grid.regionAt(row, col);
          if (rid != hoveredRegion) {
              hoveredRegion = rid;
-             if (isHumanTurn && selectedColor != -1) {
-                 Region r = graph.getRegions().get(rid);
-                 if (r.isLocked) {
-                     statusLabel.setText("Region " + rid + " is locked.");
-                 } else {
-                     statusLabel.setText("Click to color Region " + rid);
-                 }
-             }
+             bot.safety.setFocus(rid);
+             showHoverHint();
              mapPanel.repaint();
          }
      }
  }
 
+ // status line for the region under the mouse, with what the bot already knows
+ // about coloring it with the selected color
+ private void showHoverHint() {
+     if (!isHumanTurn || selectedColor == -1 || hoveredRegion == -1) return;
+     int rid = hoveredRegion;
+     Region r = graph.getRegions().get(rid);
+     if (r.isLocked) {
+         statusLabel.setText("Region " + rid + " is locked.");
+         return;
+     }
+     String hint = "";
+     switch (bot.safety.safety(rid, selectedColor)) {
+         case SAFE: hint = " (safe)"; break;
+         case DIRECT_CONFLICT: hint = " (conflicts with a neighbor)"; break;
+         case DEAD_END: hint = " (leads to a dead end)"; break;
+         default: break;
+     }
+     statusLabel.setText("Click to color Region " + rid + hint);
+ }
+
  private void onClickMap(int mx, int my) {
      int col = (mx - 50) / cellSize;
      int row = (my - 50) / cellSize;
 
      if (row < 0 || row >= gridRows || col < 0 || col >= gridCols) return;
 
-     int rid = grid[row][col].regionId;
+     int rid = grid.regionAt(row, col);
      Region region = graph.getRegions().get(rid);
 
      if (region.isLocked) {
@@ -260,10 +385,11 @@ class GameGUI extends JFrame {
          return;
      }
 
-     region.color = selectedColor;
+     graph.setColor(rid, selectedColor);
      mapPanel.repaint();
 
-     if (bot.isPuzzleSolved()) {
+     // the bot's copy has not seen this move yet, so ask the board on screen
+     if (graph.isSolved()) {
          showVictory();
          return;
      }
@@ -278,17 +404,125 @@ class GameGUI extends JFrame {
 
      statusLabel.setText("Bot running solver...");
      phaseLabel.setText("Checking for conflicts...");
+     stopIdleWork();
+
+     // the bot syncs its copy of the board from a snapshot and thinks on the executor,
+     // the result comes back to the EDT unless the move was cancelled meanwhile
+     int[] snapshot = graph.getColors();
+     BotStrategy b = bot;
+     CancelToken token = new CancelToken();
+     botMove = token;
+     botExecutor.execute(() -> {
+         BotMoveResult res = null;
+         if (!token.isCancelled()) {
+             try {
+                 b.syncBoard(snapshot);
+                 res = b.reactToHumanMove(rid, token);
+             } catch (RuntimeException ex) {
+                 ex.printStackTrace();
+             }
+         }
+         BotMoveResult done = res;
+         SwingUtilities.invokeLater(() -> {
+             if (botMove != token) return; // cancelled or a new game started
+             botMove = null;
+             if (done == null) {
+                 statusLabel.setText("Bot failed, your turn!");
+                 isHumanTurn = true;
+                 startIdleWork();
+                 return;
+             }
+             applyBotResult(done);
+         });
+     });
+ }
 
-     // use a timer so the UI updates first
-     Timer t = new Timer(900, e -> {
-         BotMoveResult res = bot.reactToHumanMove(rid);
-         applyBotResult(res);
+ private void cancelBotWork() {
+     stopIdleWork();
+     if (botMove != null) {
+         botMove.cancel();
+         botMove = null;
+     }
+ }
+
+ // the bot classifies the human's possible moves on its thread while they think
+ private void startIdleWork() {
+     stopIdleWork();
+     BotStrategy b = bot;
+     CancelToken token = new CancelToken();
+     idleWork = token;
+     botExecutor.execute(() -> {
+         if (!token.isCancelled()) b.precompute(token);
      });
-     t.setRepeats(false);
-     t.start();
+ }
+
+ private void stopIdleWork() {
+     if (idleWork != null) {
+         idleWork.cancel();
+         idleWork = null;
+     }
+ }
+
+ private void newGame() {
+     cancelBotWork();
+     newMap();
+     resetGame();
+ }
+
+ // the board as it is on screen, clues and moves so far
+ private void saveMap() {
+     JFileChooser chooser = new JFileChooser();
+     if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+     try {
+         MapFile.save(chooser.getSelectedFile().toPath(), grid, graph);
+         statusLabel.setText("Map saved.");
+     } catch (IOException ex) {
+         JOptionPane.showMessageDialog(this, "Could not save the map: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+     }
+ }
+
+ private void loadMap() {
+     JFileChooser chooser = new JFileChooser();
+     if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+     MapFile map;
+     try {
+         map = MapFile.load(chooser.getSelectedFile().toPath(), true);
+         checkColors(map);
+     } catch (IOException | IllegalArgumentException ex) {
+         JOptionPane.showMessageDialog(this, "Could not load the map: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+         return;
+     }
+     cancelBotWork();
+     useMap(map);
+     mapPanel.setPreferredSize(new Dimension(gridCols * cellSize + 100, gridRows * cellSize + 100));
+     mapPanel.revalidate();
+     resetGame();
+ }
+
+ private void resetGame() {
+     isHumanTurn = true;
+     selectedColor = -1;
+     hoveredRegion = -1;
+     showOverlay = false;
+     correctedRegion = -1;
+     hlA = new HashSet<>();
+     hlB = new HashSet<>();
+     hlSeam = new HashSet<>();
+     for (JButton b : colorButtons) {
+         b.setBorder(BorderFactory.createLineBorder(Color.GRAY, 1));
+     }
+     statusLabel.setText("Select a color and click a region");
+     phaseLabel.setText("The Bot will help you solve it");
+     statsLabel.setText(statsText());
+     mapPanel.repaint();
+     startIdleWork();
  }
 
  private void applyBotResult(BotMoveResult r) {
+     // bring the bot's changes over from its copy
+     graph.setColor(r.humanRegionId, r.finalColor);
+     if (r.botRegionId != null) graph.setColor(r.botRegionId, r.botColor);
+
      correctedRegion = -1;
      hlA = r.partitionA;
      hlB = r.partitionB;
@@ -326,20 +560,13 @@ class GameGUI extends JFrame {
      t.start();
 
      isHumanTurn = true;
+     startIdleWork();
  }
 
  private String statsText() {
      int total = graph.getRegions().size();
-     int locked = countLocked();
-     int colored = 0;
-     int conflicts = 0;
-
-     for (Region r : graph.getRegions()) {
-         if (r.color != -1) {
-             colored++;
-             if (graph.inConflict(r.id)) conflicts++;
-         }
-     }
+     int colored = graph.getColoredCount();
+     int conflicts = graph.getConflictCount();
      return colored + "/" + total + " colored | " + conflicts + " conflicts";
  }
 
@@ -354,10 +581,8 @@ class GameGUI extends JFrame {
 
          if (r.id == hoveredRegion && isHumanTurn && selectedColor != -1) fill = fill.brighter();
 
-         for (Cell c : r.cells) {
-             g2.setColor(fill);
-             g2.fillRect(ox + c.col * cellSize, oy + c.row * cellSize, cellSize, cellSize);
-         }
+         g2.setColor(fill);
+         fillRegion(g2, r, ox, oy);
      }
 
      if (showOverlay) {
@@ -367,9 +592,7 @@ class GameGUI extends JFrame {
              
              if (tint != null) {
                  g2.setColor(tint);
-                 for (Cell c : r.cells) {
-                     g2.fillRect(ox + c.col * cellSize, oy + c.row * cellSize, cellSize, cellSize);
-                 }
+                 fillRegion(g2, r, ox, oy);
              }
          }
      }
@@ -382,12 +605,12 @@ class GameGUI extends JFrame {
          for (int col = 0; col < gridCols; col++) {
              int x = ox + col * cellSize;
              int y = oy + row * cellSize;
-             Cell cell = grid[row][col];
+             int rid = grid.regionAt(row, col);
              
-             if (col < gridCols - 1 && grid[row][col + 1].regionId != cell.regionId) {
+             if (col < gridCols - 1 && grid.regionAt(row, col + 1) != rid) {
                  g2.drawLine(x + cellSize, y, x + cellSize, y + cellSize);
              }
-             if (row < gridRows - 1 && grid[row + 1][col].regionId != cell.regionId) {
+             if (row < gridRows - 1 && grid.regionAt(row + 1, col) != rid) {
                  g2.drawLine(x, y + cellSize, x + cellSize, y + cellSize);
              }
          }
@@ -422,6 +645,14 @@ class GameGUI extends JFrame {
      }
  }
 
+ // one rectangle per row run of the region
+ private void fillRegion(Graphics2D g2, Region r, int ox, int oy) {
+     for (int i = 0; i < r.runCount(); i++) {
+         g2.fillRect(ox + r.runStart(i) * cellSize, oy + r.runRow(i) * cellSize,
+                 (r.runEnd(i) - r.runStart(i)) * cellSize, cellSize);
+     }
+ }
+
  private void showVictory() {
      statusLabel.setText("Puzzle solved!");
      phaseLabel.setText("Great job!");
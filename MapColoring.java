@@ -6,15 +6,109 @@ import java.util.List;
 import javax.swing.*;
 import javax.swing.Timer;
 import java.awt.event.*;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.random.RandomGenerator;
+
+// the map itself: one region id per cell, row-major, -1 means no region assigned yet.
+// 4 bytes a cell, either on the heap or the sections of a memory-mapped map file (see MapFile).
+// a mapping holds under 2 GB, so the labels are split in chunks of 1 << shift cells;
+// everything goes through regionAt/setRegion so both work the same
+class MapGrid {
+    final int rows, cols, cells;
+    final IntBuffer[] chunks;
+    final int shift, mask;
+
+    public MapGrid(int rows, int cols) {
+        int[] cells = new int[rows * cols];
+        Arrays.fill(cells, -1);
+        this.rows = rows;
+        this.cols = cols;
+        this.cells = cells.length;
+        this.chunks = new IntBuffer[] { IntBuffer.wrap(cells) };
+        this.shift = 31;
+        this.mask = Integer.MAX_VALUE;
+    }
+
+    // chunks of 1 << shift cells each, the last one may be short
+    public MapGrid(int rows, int cols, IntBuffer[] chunks, int shift) {
+        long total = 0;
+        for (IntBuffer chunk : chunks) total += chunk.capacity();
+        if (total != (long) rows * cols) {
+            throw new IllegalArgumentException("expected " + (long) rows * cols + " cells, got " + total);
+        }
+        for (int i = 0; i < chunks.length - 1; i++) {
+            if (chunks[i].capacity() != 1 << shift) throw new IllegalArgumentException("chunk " + i + " is not full");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.cells = rows * cols;
+        this.chunks = chunks;
+        this.shift = shift;
+        this.mask = (1 << shift) - 1;
+    }
 
-// class representing a single pixel/block in the grid
-class Cell {
-    int row, col;
-    int regionId = -1; // -1 means no region assigned yet
+    public int getRows() { return rows; }
+    public int getCols() { return cols; }
+    public int cellCount() { return cells; }
+
+    public int regionAt(int row, int col) { return regionAt(row * cols + col); }
+    public int regionAt(int cell) { return chunks[cell >>> shift].get(cell & mask); }
+    public void setRegion(int cell, int rid) { chunks[cell >>> shift].put(cell & mask, rid); }
+
+    // the backing array of a heap grid, for the generator's bulk writes
+    int[] array() { return chunks[0].array(); }
+
+    // fills in every region's row runs, area and centroid from the labels, two passes
+    // over the grid: one to count runs, one to write them
+    public void layout(List<Region> regions) {
+        int n = regions.size();
+        int[] runCount = new int[n];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; ) {
+                int rid = regionAt(r, c);
+                int e = c + 1;
+                while (e < cols && regionAt(r, e) == rid) e++;
+                runCount[rid]++;
+                c = e;
+            }
+        }
 
-    public Cell(int row, int col) {
-        this.row = row;
-        this.col = col;
+        int[] pos = new int[n];
+        long[] sumRow = new long[n], sumCol = new long[n];
+        int[][] runs = new int[n][];
+        for (Region reg : regions) {
+            runs[reg.id] = new int[3 * runCount[reg.id]];
+            reg.runs = IntBuffer.wrap(runs[reg.id]);
+            reg.area = 0;
+        }
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; ) {
+                int rid = regionAt(r, c);
+                int e = c + 1;
+                while (e < cols && regionAt(r, e) == rid) e++;
+                Region reg = regions.get(rid);
+                runs[rid][pos[rid]++] = r;
+                runs[rid][pos[rid]++] = c;
+                runs[rid][pos[rid]++] = e;
+                reg.area += e - c;
+                sumRow[rid] += (long) r * (e - c);
+                sumCol[rid] += (long) (c + e - 1) * (e - c) / 2;
+                c = e;
+            }
+        }
+        for (Region reg : regions) {
+            reg.centroid = reg.area > 0
+                    ? new Point((int) (sumCol[reg.id] / reg.area), (int) (sumRow[reg.id] / reg.area))
+                    : new Point(0, 0);
+        }
     }
 }
 
@@ -23,27 +117,27 @@ class Region {
     int id;
     int color = -1; // -1 means uncolored
     boolean isLocked = false; // true if it's a starting clue
-    Set<Cell> cells = new HashSet<>();
+
+    // the cells as row runs: run i covers row runs[3i], columns runs[3i+1] .. runs[3i+2]-1.
+    // filled in by MapGrid.layout together with the area and centroid, or a slice of the
+    // runs section of a map file
+    IntBuffer runs = IntBuffer.allocate(0);
+    int area = 0;
+    Point centroid = new Point(0, 0);
 
     public Region(int id) {
         this.id = id;
     }
 
-    public void addCell(Cell c) {
-        cells.add(c);
-    }
+    public int getArea() { return area; }
+    public int runCount() { return runs.capacity() / 3; }
+    public int runRow(int i) { return runs.get(3 * i); }
+    public int runStart(int i) { return runs.get(3 * i + 1); }
+    public int runEnd(int i) { return runs.get(3 * i + 2); }
 
-    // calculates center for drawing the text
+    // center for drawing the text
     public Point getCentroid() {
-        int sr = 0, sc = 0;
-        for (Cell c : cells) {
-            sr += c.row;
-            sc += c.col;
-        }
-        if (cells.size() > 0) {
-            return new Point(sc / cells.size(), sr / cells.size());
-        }
-        return new Point(0, 0);
+        return centroid;
     }
 }
 
@@ -51,308 +145,2382 @@ class Region {
 class mapgeneration {
     Random random = new Random();
     int gridRows, gridCols;
-    Cell[][] grid;
+    MapGrid grid;
     List<Region> regions = new ArrayList<>();
     static final int MIN_REGION_SIZE = 8;
 
+    // tiled mode, see generateTiled
+    static final int TILE_SIZE = 512;
+    static final int SEAM_BAND = 6;   // cells on each side of a seam that may change hands
+    static final int SEAM_PASSES = 8; // sweeps over the band
+
     public mapgeneration(int gridRows, int gridCols) {
         this.gridRows = gridRows;
         this.gridCols = gridCols;
-        this.grid = new Cell[gridRows][gridCols];
-        // init grid
-        for (int r = 0; r < gridRows; r++) {
-            for (int c = 0; c < gridCols; c++) {
-                grid[r][c] = new Cell(r, c);
-            }
-        }
+        this.grid = new MapGrid(gridRows, gridCols);
+    }
+
+    public mapgeneration(int gridRows, int gridCols, long seed) {
+        this(gridRows, gridCols);
+        this.random = new Random(seed);
     }
 
-    // uses a seed growth approach to make regions
+    // uses a seed growth approach to make regions, on one thread over the whole grid
     public List<Region> generateRegions(int numRegions) {
-        boolean[][] visited = new boolean[gridRows][gridCols];
         int avg = (gridRows * gridCols) / numRegions;
         int min = Math.max(MIN_REGION_SIZE, avg / 2);
-        
-        List<Cell> seeds = pickSeeds(numRegions);
+        new TileGrower(grid.array(), gridRows, gridCols, random, avg, min).run(numRegions, 0);
+        for (int i = 0; i < numRegions; i++) regions.add(new Region(i));
+        grid.layout(regions);
+        return regions;
+    }
+
+    public List<Region> generateTiled(int numRegions, long seed) {
+        return generateTiled(numRegions, seed, ForkJoinPool.commonPool());
+    }
+
+    // same growth, but TILE_SIZE tiles grow their share of the regions in parallel, each with
+    // its own SplittableRandom split off the master seed in tile order. the seams are then
+    // reconciled on one thread. the map depends on the seed only, never on the thread count
+    public List<Region> generateTiled(int numRegions, long seed, ForkJoinPool pool) {
+        long cells = (long) gridRows * gridCols;
+        int avg = (int) (cells / numRegions);
+        int min = Math.max(MIN_REGION_SIZE, avg / 2);
+        int tileRows = (gridRows + TILE_SIZE - 1) / TILE_SIZE;
+        int tileCols = (gridCols + TILE_SIZE - 1) / TILE_SIZE;
+        int tiles = tileRows * tileCols;
+
+        // every tile gets regions in proportion to its area, rounded on the running total
+        // so the counts add up; ids are handed out in tile order
+        SplittableRandom master = new SplittableRandom(seed);
+        SplittableRandom[] rngs = new SplittableRandom[tiles];
+        int[] first = new int[tiles + 1];
+        long covered = 0;
+        for (int t = 0; t < tiles; t++) {
+            rngs[t] = master.split();
+            covered += (long) tileHeight(t / tileCols) * tileWidth(t % tileCols);
+            first[t + 1] = (int) ((2 * numRegions * covered + cells) / (2 * cells));
+        }
+
+        int[] area = new int[numRegions];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < tiles; t++) {
+            int tile = t;
+            tasks.add(pool.submit(() -> growTile(tile, tileCols, first, rngs[tile], avg, min, area)));
+        }
+        for (ForkJoinTask<?> task : tasks) task.join();
+
+        fillGaps(area);
+        reconcileSeams(tileRows, tileCols, master.split(), min, area);
+
+        for (int i = 0; i < numRegions; i++) regions.add(new Region(i));
+        grid.layout(regions);
+        return regions;
+    }
+
+    private int tileHeight(int tr) { return Math.min(TILE_SIZE, gridRows - tr * TILE_SIZE); }
+    private int tileWidth(int tc) { return Math.min(TILE_SIZE, gridCols - tc * TILE_SIZE); }
+
+    // grows one tile on its own buffer and copies it into the grid; tiles never overlap,
+    // so neither do the writes
+    private void growTile(int t, int tileCols, int[] first, SplittableRandom rng, int avg, int min, int[] area) {
+        int r0 = (t / tileCols) * TILE_SIZE, c0 = (t % tileCols) * TILE_SIZE;
+        int h = tileHeight(t / tileCols), w = tileWidth(t % tileCols);
+        int[] buf = new int[h * w];
+        Arrays.fill(buf, -1);
+        TileGrower g = new TileGrower(buf, h, w, rng, avg, min);
+        g.run(first[t + 1] - first[t], first[t]);
+        for (int i = 0; i < g.size.length; i++) area[first[t] + i] = g.size[i];
+        for (int r = 0; r < h; r++) {
+            System.arraycopy(buf, r * w, grid.array(), (r0 + r) * gridCols + c0, w);
+        }
+    }
+
+    // cells no tile could fill (a tile with no regions of its own, or walled in) go to the
+    // closest region over the whole grid, by one bfs in cell order
+    private void fillGaps(int[] area) {
+        int[] label = grid.array();
+        int gaps = 0;
+        for (int l : label) if (l == -1) gaps++;
+        if (gaps == 0) return;
+        int[] queue = new int[(int) Math.min(label.length, 5L * gaps)];
+        int qh = 0, qt = 0;
+        for (int cell = 0; cell < label.length; cell++) {
+            if (label[cell] != -1 && TileGrower.hasFreeNeighbor(cell, label, gridRows, gridCols)) queue[qt++] = cell;
+        }
+        int[] nbrs = new int[4];
+        while (qh < qt) {
+            int cur = queue[qh++];
+            int cnt = TileGrower.neighborCells(cur, nbrs, gridRows, gridCols);
+            for (int i = 0; i < cnt; i++) {
+                if (label[nbrs[i]] != -1) continue;
+                label[nbrs[i]] = label[cur];
+                area[label[cur]]++;
+                queue[qt++] = nbrs[i];
+            }
+        }
+    }
 
+    // tiles leave dead straight borders between their regions. a few random sweeps over a
+    // band around every seam hand border cells to the region next door, as long as the
+    // cell's own region stays connected (a simple point) and above the minimum size
+    private void reconcileSeams(int tileRows, int tileCols, SplittableRandom rng, int min, int[] area) {
+        for (int pass = 0; pass < SEAM_PASSES; pass++) {
+            for (int tc = 1; tc < tileCols; tc++) {
+                int x = tc * TILE_SIZE;
+                for (int r = 0; r < gridRows; r++) {
+                    for (int c = Math.max(0, x - SEAM_BAND); c < Math.min(gridCols, x + SEAM_BAND); c++) {
+                        jitter(r, c, rng, min, area);
+                    }
+                }
+            }
+            for (int tr = 1; tr < tileRows; tr++) {
+                int y = tr * TILE_SIZE;
+                for (int r = Math.max(0, y - SEAM_BAND); r < Math.min(gridRows, y + SEAM_BAND); r++) {
+                    for (int c = 0; c < gridCols; c++) {
+                        jitter(r, c, rng, min, area);
+                    }
+                }
+            }
+        }
+    }
+
+    private void jitter(int r, int c, SplittableRandom rng, int min, int[] area) {
+        int d = rng.nextInt(4);
+        int nr = r + (d == 0 ? -1 : d == 1 ? 1 : 0);
+        int nc = c + (d == 2 ? -1 : d == 3 ? 1 : 0);
+        if (nr < 0 || nr >= gridRows || nc < 0 || nc >= gridCols) return;
+        int own = grid.regionAt(r, c), other = grid.regionAt(nr, nc);
+        if (own == other || area[own] <= min || !isSimple(r, c, own)) return;
+        grid.setRegion(r * gridCols + c, other);
+        area[own]--;
+        area[other]++;
+    }
+
+    // true if taking (r, c) out of region rid keeps its 4-neighbors in rid connected through
+    // the surrounding 8 cells (Yokoi connectivity number 1), so the region stays in one piece
+    private boolean isSimple(int r, int c, int rid) {
+        int ring = 0; // bit k = k-th cell counterclockwise from the east one is in rid
+        for (int k = 0; k < 8; k++) {
+            int nr = r + RING_DR[k], nc = c + RING_DC[k];
+            if (nr >= 0 && nr < gridRows && nc >= 0 && nc < gridCols && grid.regionAt(nr, nc) == rid) ring |= 1 << k;
+        }
+        ring |= (ring & 1) << 8;
+        int n = 0;
+        for (int k = 0; k < 8; k += 2) {
+            int x = ring >> k & 1;
+            n += x - (x & ring >> (k + 1) & ring >> (k + 2));
+        }
+        return n == 1;
+    }
+
+    static final int[] RING_DR = {0, -1, -1, -1, 0, 1, 1, 1};
+    static final int[] RING_DC = {1, 1, 0, -1, -1, -1, 0, 1};
+
+    public MapGrid getGrid() { return grid; }
+    public int getGridRows() { return gridRows; }
+    public int getGridCols() { return gridCols; }
+}
+
+// the growth itself on one rectangle of rows x cols cells (a tile, or the whole grid).
+// label is the rectangle's own row-major buffer; regions get ids firstId and up. all regions
+// grow at once from a shared frontier and each cell is claimed at most once per pass, so
+// the cost is about linear in the number of cells
+class TileGrower {
+    final int[] label;
+    final int rows, cols;
+    final RandomGenerator random;
+    final int avg, min;
+    int[] size; // cells per region, by id - firstId
+
+    public TileGrower(int[] label, int rows, int cols, RandomGenerator random, int avg, int min) {
+        this.label = label;
+        this.rows = rows;
+        this.cols = cols;
+        this.random = random;
+        this.avg = avg;
+        this.min = min;
+    }
+
+    public void run(int numRegions, int firstId) {
+        size = new int[numRegions];
+        if (numRegions == 0) return;
+        int cells = rows * cols;
+        int[] pending = new int[cells]; // region a queued cell is promised to, -1 = not queued
+        Arrays.fill(pending, -1);
+        int[] target = new int[numRegions];
+        int[] frontier = new int[cells];
+        int fs = 0;
+
+        int[] seeds = pickSeeds(numRegions);
         for (int i = 0; i < numRegions; i++) {
-            Region region = new Region(i);
-            Cell seed = seeds.get(i);
-            
             // varied target size for natural look
-            int target = Math.max(min, (int)(avg * (0.7 + random.nextDouble() * 0.6)));
-
-            Queue<Cell> q = new LinkedList<>();
-            q.add(seed);
-            visited[seed.row][seed.col] = true;
-
-            // grow region using bfs
-            while (!q.isEmpty() && region.cells.size() < target) {
-                Cell cur = q.poll();
-                cur.regionId = i;
-                region.addCell(cur);
-                
-                List<Cell> nbrs = neighbors(cur);
-                Collections.shuffle(nbrs); // randomization
-                
-                for (Cell nb : nbrs) {
-                    if (!visited[nb.row][nb.col]) {
-                        // random chance to stop growing in one direction
-                        if (random.nextDouble() < (region.cells.size() < min ? 0.95 : 0.65)) {
-                            visited[nb.row][nb.col] = true;
-                            q.add(nb);
+            target[i] = Math.max(min, (int)(avg * (0.7 + random.nextDouble() * 0.6)));
+            pending[seeds[i]] = i;
+            frontier[fs++] = seeds[i];
+        }
+
+        // grow every region up to its target, popping the frontier in random order
+        fs = grow(pending, target, frontier, fs, true);
+
+        // force min size: regions that came up short keep growing into free cells
+        fs = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            int reg = label[cell];
+            if (reg == -1 || size[reg] >= min) continue;
+            fs = queueNeighbors(cell, reg, pending, frontier, fs, 1.0);
+        }
+        Arrays.fill(target, min);
+        grow(pending, target, frontier, fs, false);
+
+        // fill in any empty spots (orphans): one bfs from every claimed cell at once
+        // gives each orphan the region of the closest claimed cell
+        int qh = 0, qt = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (label[cell] != -1 && hasFreeNeighbor(cell, label, rows, cols)) frontier[qt++] = cell;
+        }
+        int[] nbrs = new int[4];
+        while (qh < qt) {
+            int cur = frontier[qh++];
+            int cnt = neighborCells(cur, nbrs, rows, cols);
+            for (int i = 0; i < cnt; i++) {
+                if (label[nbrs[i]] != -1) continue;
+                label[nbrs[i]] = label[cur];
+                size[label[cur]]++;
+                frontier[qt++] = nbrs[i];
+            }
+        }
+
+        if (firstId != 0) {
+            for (int cell = 0; cell < cells; cell++) {
+                if (label[cell] != -1) label[cell] += firstId;
+            }
+        }
+    }
+
+    // random-order growth over the frontier: a popped cell goes to the region it was queued
+    // for unless that region is full by now, in which case it stays free for the others.
+    // in the first pass neighbors only get queued by chance, for ragged borders
+    private int grow(int[] pending, int[] target, int[] frontier, int fs, boolean ragged) {
+        while (fs > 0) {
+            int j = random.nextInt(fs);
+            int cell = frontier[j];
+            frontier[j] = frontier[--fs];
+            int reg = pending[cell];
+            pending[cell] = -1;
+            if (size[reg] >= target[reg] || label[cell] != -1) continue;
+            label[cell] = reg;
+            size[reg]++;
+            // random chance to stop growing in one direction
+            double p = !ragged ? 1.0 : size[reg] < min ? 0.95 : 0.65;
+            fs = queueNeighbors(cell, reg, pending, frontier, fs, p);
+        }
+        return fs;
+    }
+
+    private int queueNeighbors(int cell, int reg, int[] pending, int[] frontier, int fs, double p) {
+        int r = cell / cols, c = cell % cols;
+        if (r > 0) fs = queue(cell - cols, reg, pending, frontier, fs, p);
+        if (r < rows - 1) fs = queue(cell + cols, reg, pending, frontier, fs, p);
+        if (c > 0) fs = queue(cell - 1, reg, pending, frontier, fs, p);
+        if (c < cols - 1) fs = queue(cell + 1, reg, pending, frontier, fs, p);
+        return fs;
+    }
+
+    private int queue(int cell, int reg, int[] pending, int[] frontier, int fs, double p) {
+        if (label[cell] != -1 || pending[cell] != -1) return fs;
+        if (p < 1.0 && random.nextDouble() >= p) return fs;
+        pending[cell] = reg;
+        frontier[fs++] = cell;
+        return fs;
+    }
+
+    static boolean hasFreeNeighbor(int cell, int[] label, int rows, int cols) {
+        int r = cell / cols, c = cell % cols;
+        return (r > 0 && label[cell - cols] == -1)
+                || (r < rows - 1 && label[cell + cols] == -1)
+                || (c > 0 && label[cell - 1] == -1)
+                || (c < cols - 1 && label[cell + 1] == -1);
+    }
+
+    // the up to four grid neighbors of cell into out, returns how many
+    static int neighborCells(int cell, int[] out, int rows, int cols) {
+        int r = cell / cols, c = cell % cols, k = 0;
+        if (r > 0) out[k++] = cell - cols;
+        if (r < rows - 1) out[k++] = cell + cols;
+        if (c > 0) out[k++] = cell - 1;
+        if (c < cols - 1) out[k++] = cell + 1;
+        return k;
+    }
+
+    // Poisson-disk seeds (Bridson): new seeds are tried in a ring around an active one and
+    // checked against a spatial hash of minDist-wide buckets, so a check only looks at the
+    // 3x3 buckets around the candidate. a random subset is kept if the packing gave too
+    // many; if it gave too few, the rest are random free cells, like before
+    private int[] pickSeeds(int n) {
+        int cells = rows * cols;
+        double minDist = Math.sqrt(Math.max(1, avg));
+        int bw = Math.max(1, (int) Math.ceil(minDist));
+        int bCols = (cols + bw - 1) / bw;
+        int[] head = new int[((rows + bw - 1) / bw) * bCols];
+        Arrays.fill(head, -1);
+
+        int[] seedCell = new int[Math.max(16, 2 * n)];
+        int[] next = new int[seedCell.length];
+        int[] active = new int[seedCell.length];
+        int count = 0, activeSize = 0;
+        boolean[] taken = new boolean[cells];
+
+        int first = random.nextInt(cells);
+        seedCell[0] = first;
+        next[0] = head[bucketOf(first, bw, bCols)];
+        head[bucketOf(first, bw, bCols)] = 0;
+        taken[first] = true;
+        active[activeSize++] = 0;
+        count = 1;
+
+        while (activeSize > 0) {
+            int a = random.nextInt(activeSize);
+            int s = seedCell[active[a]];
+            int sr = s / cols, sc = s % cols;
+            boolean placed = false;
+            for (int t = 0; t < 30 && !placed; t++) {
+                double angle = random.nextDouble() * 2 * Math.PI;
+                double rad = minDist * (1 + random.nextDouble());
+                int r = sr + (int) Math.round(rad * Math.sin(angle));
+                int c = sc + (int) Math.round(rad * Math.cos(angle));
+                if (r < 0 || r >= rows || c < 0 || c >= cols) continue;
+                if (!farFromSeeds(r, c, minDist, bw, bCols, head, next, seedCell)) continue;
+                if (count == seedCell.length) {
+                    seedCell = Arrays.copyOf(seedCell, 2 * count);
+                    next = Arrays.copyOf(next, 2 * count);
+                    active = Arrays.copyOf(active, 2 * count);
+                }
+                int cell = r * cols + c;
+                int b = bucketOf(cell, bw, bCols);
+                seedCell[count] = cell;
+                next[count] = head[b];
+                head[b] = count;
+                taken[cell] = true;
+                active[activeSize++] = count++;
+                placed = true;
+            }
+            if (!placed) active[a] = active[--activeSize];
+        }
+
+        // keep a random n if the packing overshot
+        for (int i = 0; i < Math.min(n, count); i++) {
+            int j = i + random.nextInt(count - i);
+            int t = seedCell[i];
+            seedCell[i] = seedCell[j];
+            seedCell[j] = t;
+        }
+        int[] seeds = Arrays.copyOf(seedCell, n);
+
+        // if we couldn't find enough spaced seeds, just pick random ones
+        for (int i = count; i < n; i++) {
+            int cell;
+            do {
+                cell = random.nextInt(cells);
+            } while (taken[cell]);
+            taken[cell] = true;
+            seeds[i] = cell;
+        }
+        return seeds;
+    }
+
+    private int bucketOf(int cell, int bw, int bCols) {
+        return (cell / cols / bw) * bCols + (cell % cols) / bw;
+    }
+
+    private boolean farFromSeeds(int r, int c, double minDist, int bw, int bCols, int[] head, int[] next, int[] seedCell) {
+        int br = r / bw, bc = c / bw;
+        int bRows = head.length / bCols;
+        for (int i = Math.max(0, br - 1); i <= Math.min(bRows - 1, br + 1); i++) {
+            for (int j = Math.max(0, bc - 1); j <= Math.min(bCols - 1, bc + 1); j++) {
+                for (int s = head[i * bCols + j]; s != -1; s = next[s]) {
+                    int dr = seedCell[s] / cols - r, dc = seedCell[s] % cols - c;
+                    if (dr * dr + dc * dc < minDist * minDist) return false;
+                }
+            }
+        }
+        return true;
+    }
+}
+
+// this class handles the graph structure (adjacency)
+class GameGraph {
+    List<Region> regions;
+    int numColors;
+
+    // compressed sparse row adjacency: the neighbors of region r are
+    // targets[offsets[r]] .. targets[offsets[r + 1] - 1], sorted ascending.
+    // heap arrays when built from the grid, mapped file sections when loaded by MapFile
+    IntBuffer offsets;
+    IntBuffer targets;
+
+    // recursive partitions of the whole map, built on first use
+    private PartitionTree bisectTree, separatorTree;
+
+    // colorCount[r * numColors + c] = neighbors of r colored c, kept up to date by setColor
+    // together with the number of colored regions and of regions clashing with a neighbor.
+    // region colors must only be changed through setColor, or these go stale
+    int[] colorCount;
+    int coloredCount = 0;
+    int conflictCount = 0;
+
+    public GameGraph(List<Region> regions, MapGrid grid, int numColors) {
+        this(regions, grid, numColors, ForkJoinPool.commonPool());
+    }
+
+    public GameGraph(List<Region> regions, MapGrid grid, int numColors, ForkJoinPool pool) {
+        this.regions = regions;
+        this.numColors = numColors;
+        buildAdjacency(grid, pool);
+        initCounters();
+    }
+
+    // over an adjacency that was worked out before, e.g. the csr sections of a map file.
+    // the buffers are read in place, never copied
+    public GameGraph(List<Region> regions, IntBuffer offsets, IntBuffer targets, int numColors) {
+        int n = regions.size();
+        if (offsets.capacity() != n + 1 || offsets.get(n) != targets.capacity()) {
+            throw new IllegalArgumentException("adjacency does not fit " + n + " regions");
+        }
+        this.regions = regions;
+        this.numColors = numColors;
+        this.offsets = offsets;
+        this.targets = targets;
+        initCounters();
+    }
+
+    // regions may come in already colored
+    private void initCounters() {
+        colorCount = new int[regions.size() * numColors];
+        int[] initial = new int[regions.size()];
+        for (Region r : regions) {
+            initial[r.id] = r.color;
+            r.color = -1;
+        }
+        for (Region r : regions) setColor(r.id, initial[r.id]);
+    }
+
+    // adjacency from the grid: row stripes are scanned in parallel, each cell only against
+    // its right and down neighbor, and every border found goes into the stripe's buffer as
+    // min << 32 | max (a run of the same border along a row is stored once). the buffers
+    // are sorted and de-duplicated, then merged into one sorted edge list that fills the
+    // csr arrays in a single pass, every neighbor list coming out ascending
+    private void buildAdjacency(MapGrid grid, ForkJoinPool pool) {
+        int rows = grid.getRows();
+        int stripes = Math.max(1, Math.min(rows, 4 * pool.getParallelism()));
+        long[][] edges = new long[stripes][];
+        int[] counts = new int[stripes];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int s = 0; s < stripes; s++) {
+            int stripe = s;
+            tasks.add(pool.submit(() -> {
+                long[] buf = scanStripe(grid, stripe * rows / stripes, (stripe + 1) * rows / stripes);
+                int cnt = (int) buf[0];
+                Arrays.sort(buf, 1, cnt + 1);
+                edges[stripe] = buf;
+                counts[stripe] = dedupe(buf, 1, cnt + 1);
+            }));
+        }
+        int total = 0;
+        for (int s = 0; s < stripes; s++) {
+            tasks.get(s).join();
+            total += counts[s];
+        }
+
+        long[] all = new long[total];
+        int k = 0;
+        for (int s = 0; s < stripes; s++) {
+            System.arraycopy(edges[s], 1, all, k, counts[s]);
+            k += counts[s];
+        }
+        Arrays.sort(all);
+        int m = dedupe(all, 0, all.length);
+
+        int n = regions.size();
+        int[] off = new int[n + 1];
+        for (int i = 0; i < m; i++) {
+            off[(int) (all[i] >>> 32) + 1]++;
+            off[(int) all[i] + 1]++;
+        }
+        for (int i = 0; i < n; i++) off[i + 1] += off[i];
+        int[] tgt = new int[off[n]];
+        int[] pos = Arrays.copyOf(off, n);
+        for (int i = 0; i < m; i++) {
+            int a = (int) (all[i] >>> 32), b = (int) all[i];
+            tgt[pos[a]++] = b;
+            tgt[pos[b]++] = a;
+        }
+        offsets = IntBuffer.wrap(off);
+        targets = IntBuffer.wrap(tgt);
+    }
+
+    // borders seen in rows r0 .. r1-1; the count is kept in slot 0
+    private static long[] scanStripe(MapGrid grid, int r0, int r1) {
+        int rows = grid.getRows(), cols = grid.getCols();
+        long[] buf = new long[1024];
+        int cnt = 0;
+        for (int r = r0; r < r1; r++) {
+            int base = r * cols;
+            long lastRight = -1, lastDown = -1;
+            for (int c = 0; c < cols; c++) {
+                int rid = grid.regionAt(base + c);
+                if (c + 1 < cols) {
+                    int nid = grid.regionAt(base + c + 1);
+                    if (nid != rid) {
+                        long e = edgeKey(rid, nid);
+                        if (e != lastRight) {
+                            if (++cnt == buf.length) buf = Arrays.copyOf(buf, 2 * buf.length);
+                            buf[cnt] = e;
+                            lastRight = e;
                         }
                     }
                 }
+                if (r + 1 < rows) {
+                    int nid = grid.regionAt(base + cols + c);
+                    if (nid != rid) {
+                        long e = edgeKey(rid, nid);
+                        if (e != lastDown) {
+                            if (++cnt == buf.length) buf = Arrays.copyOf(buf, 2 * buf.length);
+                            buf[cnt] = e;
+                            lastDown = e;
+                        }
+                    }
+                }
+            }
+        }
+        buf[0] = cnt;
+        return buf;
+    }
+
+    private static long edgeKey(int a, int b) {
+        return a < b ? (long) a << 32 | b : (long) b << 32 | a;
+    }
+
+    // squeezes repeats out of the sorted range a[from..to) to its front, returns how many are left
+    private static int dedupe(long[] a, int from, int to) {
+        int k = 0;
+        for (int i = from; i < to; i++) {
+            if (k == 0 || a[from + k - 1] != a[i]) a[from + k++] = a[i];
+        }
+        return k;
+    }
+
+    // copy with its own regions and counters for another thread. the topology (csr arrays,
+    // region runs, partition trees) never changes and is shared
+    public GameGraph(GameGraph o) {
+        this.numColors = o.numColors;
+        this.offsets = o.offsets;
+        this.targets = o.targets;
+        this.regions = new ArrayList<>(o.regions.size());
+        for (Region r : o.regions) {
+            Region c = new Region(r.id);
+            c.color = r.color;
+            c.isLocked = r.isLocked;
+            c.runs = r.runs;
+            c.area = r.area;
+            c.centroid = r.centroid;
+            regions.add(c);
+        }
+        this.colorCount = o.colorCount.clone();
+        this.coloredCount = o.coloredCount;
+        this.conflictCount = o.conflictCount;
+        synchronized (o) {
+            this.bisectTree = o.bisectTree;
+            this.separatorTree = o.separatorTree;
+        }
+    }
+
+    public int[] getColors() {
+        int[] colors = new int[regions.size()];
+        for (Region r : regions) colors[r.id] = r.color;
+        return colors;
+    }
+
+    // brings the board in line with a snapshot from getColors, returns how many changed
+    public int setColors(int[] colors) {
+        int changed = 0;
+        for (Region r : regions) {
+            if (r.color != colors[r.id]) {
+                setColor(r.id, colors[r.id]);
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    // the one way to change a region's color (-1 clears it), in O(degree)
+    public void setColor(int regionId, int color) {
+        Region r = regions.get(regionId);
+        int old = r.color;
+        if (old == color) return;
+        if (old != -1) {
+            if (colorCount[regionId * numColors + old] > 0) conflictCount--;
+            for (int i = neighborStart(regionId), e = neighborEnd(regionId); i < e; i++) {
+                int n = targets.get(i);
+                if (regions.get(n).color == old && colorCount[n * numColors + old] == 1) conflictCount--;
+                colorCount[n * numColors + old]--;
+            }
+            coloredCount--;
+        }
+        r.color = color;
+        if (color != -1) {
+            for (int i = neighborStart(regionId), e = neighborEnd(regionId); i < e; i++) {
+                int n = targets.get(i);
+                if (regions.get(n).color == color && colorCount[n * numColors + color] == 0) conflictCount++;
+                colorCount[n * numColors + color]++;
+            }
+            if (colorCount[regionId * numColors + color] > 0) conflictCount++;
+            coloredCount++;
+        }
+    }
+
+    public Set<Integer> availableColors(int regionId) {
+        Set<Integer> avail = new HashSet<>();
+        for (int c = 0; c < numColors; c++) {
+            if (colorCount[regionId * numColors + c] == 0) avail.add(c);
+        }
+        return avail;
+    }
+
+    // bit c set = no neighbor uses color c
+    public int availableMask(int regionId) {
+        int mask = 0;
+        for (int c = 0; c < numColors; c++) {
+            if (colorCount[regionId * numColors + c] == 0) mask |= 1 << c;
+        }
+        return mask;
+    }
+
+    public int availableCount(int regionId) {
+        return Integer.bitCount(availableMask(regionId));
+    }
+
+    // checks if a region conflicts with its neighbors
+    public boolean inConflict(int regionId) {
+        int c = regions.get(regionId).color;
+        return c != -1 && colorCount[regionId * numColors + c] > 0;
+    }
+
+    public int getColoredCount() { return coloredCount; }
+    public int getConflictCount() { return conflictCount; }
+
+    public boolean isSolved() {
+        return coloredCount == regions.size() && conflictCount == 0;
+    }
+
+    public List<Region> getRegions() { return regions; }
+    public int getNumColors() { return numColors; }
+    public int size() { return regions.size(); }
+
+    // allocation-free neighbor iteration:
+    // for (int i = g.neighborStart(r), e = g.neighborEnd(r); i < e; i++) { int n = g.neighborAt(i); ... }
+    public int neighborStart(int rid) { return offsets.get(rid); }
+    public int neighborEnd(int rid) { return offsets.get(rid + 1); }
+    public int neighborAt(int i) { return targets.get(i); }
+    public int degree(int rid) { return offsets.get(rid + 1) - offsets.get(rid); }
+    public int edgeCount() { return targets.capacity() / 2; }
+
+    // the topology never changes, so each kind of partition tree is built once
+    public synchronized PartitionTree partitionTree(boolean dissect) {
+        if (dissect) {
+            if (separatorTree == null) separatorTree = PartitionTree.build(this, true);
+            return separatorTree;
+        }
+        if (bisectTree == null) bisectTree = PartitionTree.build(this, false);
+        return bisectTree;
+    }
+}
+
+// BFS-based splitting of a set of regions, on primitive scratch arrays.
+// not thread safe: every thread that splits needs its own instance
+class GraphPartitioner {
+    final GameGraph graph;
+    final int[] member, reachA, reachB, distA, distB, queue, cut, inSep;
+    int stamp = 0, visit = 0;
+
+    public GraphPartitioner(GameGraph graph) {
+        this.graph = graph;
+        int n = graph.size();
+        member = new int[n];
+        reachA = new int[n];
+        reachB = new int[n];
+        distA = new int[n];
+        distB = new int[n];
+        queue = new int[n];
+        cut = new int[n];
+        inSep = new int[n];
+    }
+
+    // bfs inside the current member set, returns the farthest region reached
+    private int bfs(int src, int[] dist, int[] reach, int mark) {
+        int qh = 0, qt = 0, far = src;
+        reach[src] = mark;
+        dist[src] = 0;
+        queue[qt++] = src;
+        while (qh < qt) {
+            int cur = queue[qh++];
+            if (dist[cur] > dist[far]) far = cur;
+            for (int j = graph.neighborStart(cur), e = graph.neighborEnd(cur); j < e; j++) {
+                int nb = graph.neighborAt(j);
+                if (member[nb] == stamp && reach[nb] != mark) {
+                    reach[nb] = mark;
+                    dist[nb] = dist[cur] + 1;
+                    queue[qt++] = nb;
+                }
+            }
+        }
+        return far;
+    }
+
+    // splits ids by distance to two far apart seeds. regions neither seed can reach
+    // (another island) go to whichever side is smaller at that point
+    public int[][] bisect(int[] ids) {
+        stamp++;
+        for (int rid : ids) member[rid] = stamp;
+
+        // farthest from an arbitrary start, then the farthest from that one
+        int nodeA = bfs(ids[0], distA, reachA, ++visit);
+        int markA = ++visit;
+        int nodeB = bfs(nodeA, distA, reachA, markA);
+        if (nodeB == nodeA) nodeB = ids[ids.length / 2];
+        int markB = ++visit;
+        bfs(nodeB, distB, reachB, markB);
+
+        int[] a = new int[ids.length];
+        int[] b = new int[ids.length];
+        int na = 0, nb = 0;
+        for (int rid : ids) {
+            boolean hasA = reachA[rid] == markA;
+            boolean hasB = reachB[rid] == markB;
+            if (!hasA && !hasB) {
+                if (na <= nb) a[na++] = rid;
+                else b[nb++] = rid;
+            } else if (hasA && (!hasB || distA[rid] <= distB[rid])) {
+                a[na++] = rid;
+            } else {
+                b[nb++] = rid;
+            }
+        }
+
+        // fail-safe if split didn't work well
+        if (na == 0 || nb == 0) {
+            int mid = ids.length / 2;
+            return new int[][]{ Arrays.copyOfRange(ids, 0, mid), Arrays.copyOfRange(ids, mid, ids.length) };
+        }
+        return new int[][]{ Arrays.copyOf(a, na), Arrays.copyOf(b, nb) };
+    }
+
+    // vertex cover of the cut edges between the halves, taken greedily by
+    // cut degree so a region touching many cross edges covers them all at once
+    public int[] separator(int[] left, int[] right) {
+        stamp++;
+        int leftMark = stamp;
+        for (int rid : left) member[rid] = leftMark;
+        stamp++;
+        int rightMark = stamp;
+        for (int rid : right) member[rid] = rightMark;
+
+        int[] boundary = new int[left.length + right.length];
+        int nbd = 0;
+        for (int rid : left) cut[rid] = 0;
+        for (int rid : right) cut[rid] = 0;
+        for (int rid : left) {
+            for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+                int n = graph.neighborAt(j);
+                if (member[n] != rightMark) continue;
+                if (cut[rid]++ == 0) boundary[nbd++] = rid;
+                if (cut[n]++ == 0) boundary[nbd++] = n;
+            }
+        }
+
+        // highest cut degree first, ties by id
+        long[] order = new long[nbd];
+        for (int i = 0; i < nbd; i++) order[i] = ((long) -cut[boundary[i]] << 32) | boundary[i];
+        Arrays.sort(order);
+
+        int[] sep = new int[nbd];
+        int ns = 0;
+        for (long key : order) {
+            int rid = (int) key;
+            // still needed only if some cross edge of rid is uncovered
+            int other = member[rid] == leftMark ? rightMark : leftMark;
+            for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+                int n = graph.neighborAt(j);
+                if (member[n] == other && inSep[n] != leftMark) {
+                    inSep[rid] = leftMark;
+                    sep[ns++] = rid;
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(sep, ns);
+    }
+
+    // connected components of the subgraph induced by ids, largest first
+    public int[][] components(int[] ids) {
+        return components(ids, null);
+    }
+
+    // same, polling state (may be null) while it walks; null once it was cancelled
+    public int[][] components(int[] ids, SearchState state) {
+        stamp++;
+        for (int rid : ids) member[rid] = stamp;
+        int mark = ++visit;
+        List<int[]> comps = new ArrayList<>();
+        for (int rid : ids) {
+            if (reachA[rid] == mark) continue;
+            int qh = 0, qt = 0;
+            reachA[rid] = mark;
+            queue[qt++] = rid;
+            while (qh < qt) {
+                if (state != null && state.shouldStop()) return null;
+                int cur = queue[qh++];
+                for (int j = graph.neighborStart(cur), e = graph.neighborEnd(cur); j < e; j++) {
+                    int nb = graph.neighborAt(j);
+                    if (member[nb] == stamp && reachA[nb] != mark) {
+                        reachA[nb] = mark;
+                        queue[qt++] = nb;
+                    }
+                }
+            }
+            comps.add(Arrays.copyOf(queue, qt));
+        }
+        comps.sort((x, y) -> y.length - x.length);
+        return comps.toArray(new int[0][]);
+    }
+
+    // ids minus the regions in sep
+    public static int[] without(int[] ids, int[] sep) {
+        if (sep.length == 0) return ids;
+        Set<Integer> drop = new HashSet<>();
+        for (int rid : sep) drop.add(rid);
+        int[] out = new int[ids.length];
+        int k = 0;
+        for (int rid : ids) if (!drop.contains(rid)) out[k++] = rid;
+        return Arrays.copyOf(out, k);
+    }
+}
+
+// recursive split of the whole map. the topology never changes during a game, so the
+// tree is built once per graph and every solve only restricts it to its free regions
+class PartitionTree {
+    static class Node {
+        int id;
+        int[] regions;   // every region in this subtree
+        int[] separator; // colored before the children (empty when built by bisection)
+        Node left, right, parent;
+        int depth;
+        private int[] halo;  // regions outside the subtree that touch it, built on demand
+
+        boolean isLeaf() { return left == null; }
+
+        synchronized int[] halo(GameGraph graph) {
+            if (halo != null) return halo;
+            Set<Integer> inside = new HashSet<>();
+            for (int rid : regions) inside.add(rid);
+            TreeSet<Integer> out = new TreeSet<>();
+            for (int rid : regions) {
+                for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+                    int nb = graph.neighborAt(j);
+                    if (!inside.contains(nb)) out.add(nb);
+                }
+            }
+            int[] h = new int[out.size()];
+            int k = 0;
+            for (int rid : out) h[k++] = rid;
+            halo = h;
+            return halo;
+        }
+    }
+
+    final Node root;
+    final boolean dissect;
+    final Node[] home; // deepest node holding each region: its leaf, or the node it separates
+    int nodeCount = 0;
+
+    private PartitionTree(GameGraph graph, boolean dissect) {
+        this.dissect = dissect;
+        int[] all = new int[graph.size()];
+        for (int i = 0; i < all.length; i++) all[i] = i;
+        this.home = new Node[all.length];
+        this.root = all.length == 0 ? null : build(new GraphPartitioner(graph), all, null);
+    }
+
+    public static PartitionTree build(GameGraph graph, boolean dissect) {
+        return new PartitionTree(graph, dissect);
+    }
+
+    // smallest node whose subtree holds all of ids, the deepest common ancestor of their
+    // homes. O(ids * depth), however big the tree
+    Node holding(int[] ids) {
+        Node common = home[ids[0]];
+        for (int rid : ids) {
+            Node h = home[rid];
+            while (h.depth > common.depth) h = h.parent;
+            while (common.depth > h.depth) common = common.parent;
+            while (h != common) {
+                h = h.parent;
+                common = common.parent;
+            }
+        }
+        return common;
+    }
+
+    private Node build(GraphPartitioner p, int[] ids, Node parent) {
+        Node node = new Node();
+        node.id = nodeCount++;
+        node.regions = ids;
+        node.separator = new int[0];
+        node.parent = parent;
+        node.depth = parent == null ? 0 : parent.depth + 1;
+        if (ids.length <= DivideAndConquerBot.BASE_SIZE) {
+            for (int rid : ids) home[rid] = node;
+            return node;
+        }
+
+        int[][] parts = p.bisect(ids);
+        int[] left = parts[0], right = parts[1];
+        if (dissect) {
+            node.separator = p.separator(left, right);
+            left = GraphPartitioner.without(left, node.separator);
+            right = GraphPartitioner.without(right, node.separator);
+        }
+        for (int rid : node.separator) home[rid] = node;
+        node.left = build(p, left, node);
+        node.right = build(p, right, node);
+        return node;
+    }
+}
+
+// cooperative cancellation shared by a search and everything it forks.
+// a token with a budget also counts as cancelled once its deadline has passed
+class CancelToken {
+    private volatile boolean cancelled = false;
+    private final CancelToken parent;
+    private final boolean timed;
+    private final long deadline; // System.nanoTime() value
+
+    public CancelToken() { this(null); }
+    public CancelToken(CancelToken parent) { this(parent, 0); }
+
+    // budgetMillis <= 0 means no deadline
+    public CancelToken(CancelToken parent, long budgetMillis) {
+        this.parent = parent;
+        this.timed = budgetMillis > 0;
+        this.deadline = timed ? System.nanoTime() + budgetMillis * 1_000_000L : 0;
+    }
+
+    public void cancel() { cancelled = true; }
+
+    public boolean isCancelled() {
+        for (CancelToken t = this; t != null; t = t.parent) {
+            if (t.cancelled || t.expired()) return true;
+        }
+        return false;
+    }
+
+    // true if this token or one above it ran out of time
+    public boolean timedOut() {
+        for (CancelToken t = this; t != null; t = t.parent) {
+            if (t.expired()) return true;
+        }
+        return false;
+    }
+
+    private boolean expired() {
+        return timed && System.nanoTime() - deadline > 0;
+    }
+}
+
+// working copy of the coloring used by the solver.
+// every region keeps a bitmask of the colors none of its colored neighbors use,
+// maintained incrementally on assign/unassign so the search allocates nothing per node
+class SearchState {
+    final GameGraph graph;
+    final int n, k;
+    final int fullMask;
+    final int[] color;   // -1 means uncolored
+    final int[] domain;  // bit c set = color c still legal
+    final int[] blocked; // blocked[r * k + c] = number of neighbors of r colored c
+
+    // searches poll this every few hundred nodes; once seen it sticks in stopped
+    CancelToken cancel;
+
+    // regions held back by kernelization: uncolored, but not part of any search (null = none).
+    // shared read-only between copies
+    boolean[] deferred;
+    // what the run this state belongs to did, shared with its copies (see RunStats)
+    RunStats stats;
+    boolean stopped = false;
+    int polls = 0;
+    int[] stoppedColors; // colors at the moment the stop was seen, the deepest partial of the search
+
+    public SearchState(GameGraph graph) {
+        this.graph = graph;
+        this.n = graph.size();
+        this.k = graph.getNumColors();
+        if (k > 31) throw new IllegalArgumentException("at most 31 colors fit in a domain mask");
+        this.fullMask = (1 << k) - 1;
+        this.color = new int[n];
+        this.domain = new int[n];
+        this.blocked = new int[n * k];
+        Arrays.fill(color, -1);
+        Arrays.fill(domain, fullMask);
+    }
+
+    public SearchState(SearchState o) {
+        this.graph = o.graph;
+        this.n = o.n;
+        this.k = o.k;
+        this.fullMask = o.fullMask;
+        this.color = o.color.clone();
+        this.domain = o.domain.clone();
+        this.blocked = o.blocked.clone();
+        this.cancel = o.cancel;
+        this.stopped = o.stopped;
+        this.deferred = o.deferred;
+        this.stats = o.stats;
+    }
+
+    // snapshot of the colors currently on the board
+    public static SearchState fromGraph(GameGraph graph) {
+        SearchState s = new SearchState(graph);
+        for (Region r : graph.getRegions()) {
+            if (r.color != -1) s.assign(r.id, r.color);
+        }
+        return s;
+    }
+
+    public void assign(int rid, int c) {
+        color[rid] = c;
+        for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+            int n = graph.neighborAt(j);
+            if (blocked[n * k + c]++ == 0) domain[n] &= ~(1 << c);
+        }
+    }
+
+    public void unassign(int rid) {
+        int c = color[rid];
+        if (c == -1) return;
+        color[rid] = -1;
+        for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+            int n = graph.neighborAt(j);
+            if (--blocked[n * k + c] == 0) domain[n] |= 1 << c;
+        }
+    }
+
+    // true if the region is colored and a neighbor has the same color
+    public boolean inConflict(int rid) {
+        int c = color[rid];
+        return c != -1 && blocked[rid * k + c] > 0;
+    }
+
+    // uncolored and not held back, i.e. still up to the search
+    public boolean isOpen(int rid) {
+        return color[rid] == -1 && (deferred == null || !deferred[rid]);
+    }
+
+    // per-region scratch for conflict-directed backjumping, allocated on first use
+    int[] searchLevel, fixedMark, fixedSlot;
+    int fixedStamp = 0;
+
+    public void ensureBackjumping() {
+        if (searchLevel != null) return;
+        searchLevel = new int[n];
+        Arrays.fill(searchLevel, -1);
+        fixedMark = new int[n];
+        fixedSlot = new int[n];
+    }
+
+    // true once the search owning this state was cancelled
+    public boolean shouldStop() {
+        if (stopped) return true;
+        if ((++polls & 255) != 0) return false;
+        return stopNow();
+    }
+
+    // same without the poll interval, for the linear phases between searches and for
+    // the last look before a failure is reported as a proof
+    public boolean stopNow() {
+        if (stopped) return true;
+        if (cancel == null) return false;
+        stopped = cancel.isCancelled();
+        if (stopped) stoppedColors = color.clone();
+        return stopped;
+    }
+
+    public Map<Integer, Integer> toMap() {
+        Map<Integer, Integer> m = new HashMap<>();
+        for (int i = 0; i < n; i++) m.put(i, color[i]);
+        return m;
+    }
+
+    // ---- optional propagation layer (forward checking + AC-3) ----
+    // pruned[r] holds colors removed by propagation on top of the neighbor masks.
+    // every removal goes on the trail so a search level can undo it in O(changes).
+    // these arrays are allocated on first use and never copied: copies start clean.
+    int[] pruned;
+    int[] trailRid, trailBits;
+    int trailTop = 0;
+    int[] scopeMark, queueMark, queue;
+    int scopeStamp = 0, queueStamp = 0;
+
+    private void ensurePropagation() {
+        if (pruned != null) return;
+        pruned = new int[n];
+        trailRid = new int[Math.max(16, n * k)];
+        trailBits = new int[trailRid.length];
+        scopeMark = new int[n];
+        queueMark = new int[n];
+        queue = new int[n];
+    }
+
+    // colors still possible once propagation is taken into account
+    public int live(int rid) {
+        return pruned == null ? domain[rid] : domain[rid] & ~pruned[rid];
+    }
+
+    public int mark() { return trailTop; }
+
+    public void undoTo(int mark) {
+        while (trailTop > mark) {
+            trailTop--;
+            pruned[trailRid[trailTop]] &= ~trailBits[trailTop];
+        }
+    }
+
+    // restricts propagation to the regions being searched
+    public void enterScope(int[] ids) {
+        ensurePropagation();
+        scopeStamp++;
+        for (int rid : ids) scopeMark[rid] = scopeStamp;
+    }
+
+    private boolean inScope(int rid) {
+        return scopeMark[rid] == scopeStamp && color[rid] == -1;
+    }
+
+    private void prune(int rid, int bits) {
+        pruned[rid] |= bits;
+        trailRid[trailTop] = rid;
+        trailBits[trailTop] = bits;
+        trailTop++;
+    }
+
+    // initial consistency pass over a freshly entered scope
+    public boolean propagateAll(int[] ids) {
+        queueStamp++;
+        int qt = 0;
+        for (int rid : ids) {
+            if (color[rid] != -1) continue;
+            int l = live(rid);
+            if (l == 0) return false;
+            if ((l & (l - 1)) == 0) {
+                queueMark[rid] = queueStamp;
+                queue[qt++] = rid;
+            }
+        }
+        return arcConsistency(qt);
+    }
+
+    // forward check the neighbors of a region that was just assigned,
+    // then run AC-3 from every neighbor left with a single color
+    public boolean propagateFrom(int rid) {
+        queueStamp++;
+        int qt = 0;
+        for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+            int nb = graph.neighborAt(j);
+            if (!inScope(nb)) continue;
+            int l = live(nb);
+            if (l == 0) return false;
+            if ((l & (l - 1)) == 0 && queueMark[nb] != queueStamp) {
+                queueMark[nb] = queueStamp;
+                queue[qt++] = nb;
+            }
+        }
+        return arcConsistency(qt);
+    }
+
+    // for "different color" constraints an arc x -> y only prunes when x is down to
+    // one color, so the queue holds singleton regions whose color must leave their neighbors.
+    // a cancelled search also gets false here, with stopped set
+    private boolean arcConsistency(int qt) {
+        int qh = 0, size = qt;
+        if (qt == n) qt = 0;
+        while (size > 0) {
+            if (shouldStop()) return false;
+            int x = queue[qh];
+            qh = (qh + 1) % n;
+            size--;
+            queueMark[x] = 0;
+            int lx = live(x);
+            if (lx == 0) return false;
+            for (int j = graph.neighborStart(x), e = graph.neighborEnd(x); j < e; j++) {
+                int y = graph.neighborAt(j);
+                if (!inScope(y)) continue;
+                int ly = live(y);
+                if ((ly & lx) == 0) continue;
+                prune(y, lx);
+                ly &= ~lx;
+                if (ly == 0) return false;
+                if ((ly & (ly - 1)) == 0 && queueMark[y] != queueStamp) {
+                    queueMark[y] = queueStamp;
+                    queue[qt] = y;
+                    qt = (qt + 1) % n;
+                    size++;
+                }
+            }
+        }
+        return true;
+    }
+}
+
+// bounded store of learned nogoods: sets of (region, color) literals, encoded as
+// rid * k + color, that no valid coloring can contain all at once. oldest are
+// overwritten first. shared by every search of one bot, so access is synchronized
+class NogoodStore {
+    final int k;
+    final int capacity, maxLength;
+    final int[][] nogoods;
+    int next = 0, size = 0;
+    long learned = 0, used = 0;
+
+    // literal -> slots of the nogoods containing it
+    final Map<Integer, int[]> byLiteral = new HashMap<>();
+    final Map<Integer, Integer> byLiteralSize = new HashMap<>();
+
+    public NogoodStore(int numColors, int capacity, int maxLength) {
+        this.k = numColors;
+        this.capacity = capacity;
+        this.maxLength = maxLength;
+        this.nogoods = new int[capacity][];
+    }
+
+    public synchronized void add(int[] lits) {
+        if (lits.length == 0 || lits.length > maxLength || capacity == 0) return;
+        int slot = next;
+        next = (next + 1) % capacity;
+        if (nogoods[slot] != null) unindex(slot);
+        else size++;
+        nogoods[slot] = lits;
+        for (int lit : lits) {
+            int[] list = byLiteral.getOrDefault(lit, new int[4]);
+            int n = byLiteralSize.getOrDefault(lit, 0);
+            if (n == list.length) list = Arrays.copyOf(list, n * 2);
+            list[n] = slot;
+            byLiteral.put(lit, list);
+            byLiteralSize.put(lit, n + 1);
+        }
+        learned++;
+    }
+
+    private void unindex(int slot) {
+        for (int lit : nogoods[slot]) {
+            int[] list = byLiteral.get(lit);
+            int n = byLiteralSize.get(lit);
+            for (int i = 0; i < n; i++) {
+                if (list[i] == slot) {
+                    list[i] = list[--n];
+                    break;
+                }
+            }
+            if (n == 0) {
+                byLiteral.remove(lit);
+                byLiteralSize.remove(lit);
+            } else {
+                byLiteralSize.put(lit, n);
+            }
+        }
+    }
+
+    // a stored nogood that contains lit and whose other literals all hold in color[], or null
+    public synchronized int[] forbidding(int lit, int[] color) {
+        int[] list = byLiteral.get(lit);
+        if (list == null) return null;
+        int n = byLiteralSize.get(lit);
+        for (int i = 0; i < n; i++) {
+            int[] ng = nogoods[list[i]];
+            boolean active = true;
+            for (int other : ng) {
+                if (other != lit && color[other / k] != other % k) {
+                    active = false;
+                    break;
+                }
+            }
+            if (active) {
+                used++;
+                return ng;
+            }
+        }
+        return null;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(nogoods, null);
+        byLiteral.clear();
+        byLiteralSize.clear();
+        next = 0;
+        size = 0;
+    }
+
+    public synchronized int size() { return size; }
+}
+
+// near-linear fast path for planar maps: colors the free regions greedily in
+// smallest-last (degeneracy) order and, when a region runs out of colors, frees one
+// with a Kempe-chain swap. chains may only flip regions of the given free set, so
+// locked and player-colored regions are never touched. false means it gave up and
+// left the state as it found it; the exhaustive search has to decide then.
+// the scratch arrays are reused call after call, so every thread needs its own instance
+class PlanarFastPath {
+    final GameGraph graph;
+    final int n, k;
+    final int[] member, position, adjMark, chainMark, queue, chainColor;
+    // smallestLast's buckets, indexed by position in ids
+    final int[] deg, next, prev, head, order;
+    final boolean[] removed;
+    int stamp = 0, adjStamp = 0, chainStamp = 0;
+    public int kempeSwaps = 0;
+
+    public PlanarFastPath(GameGraph graph) {
+        this.graph = graph;
+        this.n = graph.size();
+        this.k = graph.getNumColors();
+        this.member = new int[n];
+        this.position = new int[n];
+        this.adjMark = new int[n];
+        this.chainMark = new int[n];
+        this.queue = new int[n];
+        this.chainColor = new int[n];
+        this.deg = new int[n];
+        this.next = new int[n];
+        this.prev = new int[n];
+        this.head = new int[n];
+        this.order = new int[n];
+        this.removed = new boolean[n];
+    }
+
+    public boolean color(int[] ids, SearchState state) {
+        stamp++;
+        for (int i = 0; i < ids.length; i++) {
+            member[ids[i]] = stamp;
+            position[ids[i]] = i; // only valid where member is stamped
+        }
+
+        if (!smallestLast(ids, state)) return false;
+        for (int i = ids.length - 1; i >= 0; i--) {
+            int rid = order[i];
+            if (state.shouldStop() || state.domain[rid] == 0 && !kempe(rid, state)) {
+                for (int r : ids) state.unassign(r);
+                return false;
+            }
+            state.assign(rid, Integer.numberOfTrailingZeros(state.domain[rid]));
+        }
+        return true;
+    }
+
+    // repeatedly removes a region of minimum degree among the ones left, using bucket
+    // lists so the whole order costs O(n + m). the order ends up in order[0 .. ids.length).
+    // false if state was cancelled
+    private boolean smallestLast(int[] ids, SearchState state) {
+        int m = ids.length;
+
+        int maxDeg = 0;
+        for (int i = 0; i < m; i++) {
+            if (state.shouldStop()) return false;
+            int rid = ids[i];
+            deg[i] = 0;
+            for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+                if (member[graph.neighborAt(j)] == stamp) deg[i]++;
+            }
+            maxDeg = Math.max(maxDeg, deg[i]);
+        }
+        Arrays.fill(head, 0, maxDeg + 1, -1);
+        Arrays.fill(removed, 0, m, false);
+        for (int i = 0; i < m; i++) {
+            prev[i] = -1;
+            next[i] = head[deg[i]];
+            if (head[deg[i]] != -1) prev[head[deg[i]]] = i;
+            head[deg[i]] = i;
+        }
+
+        int low = 0;
+        for (int t = 0; t < m; t++) {
+            if (state.shouldStop()) return false;
+            while (head[low] == -1) low++;
+            int i = head[low];
+            head[low] = next[i];
+            if (next[i] != -1) prev[next[i]] = -1;
+            removed[i] = true;
+            order[t] = ids[i];
+
+            int rid = ids[i];
+            for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+                int nb = graph.neighborAt(j);
+                if (member[nb] != stamp) continue;
+                int x = position[nb];
+                if (removed[x]) continue;
+                // unlink x from its bucket and move it one down
+                if (prev[x] != -1) next[prev[x]] = next[x];
+                else head[deg[x]] = next[x];
+                if (next[x] != -1) prev[next[x]] = prev[x];
+                deg[x]--;
+                prev[x] = -1;
+                next[x] = head[deg[x]];
+                if (head[deg[x]] != -1) prev[head[deg[x]]] = x;
+                head[deg[x]] = x;
+            }
+            if (low > 0) low--;
+        }
+        return true;
+    }
+
+    // tries to make some color a legal for rid by swapping a/b on every (a,b) chain
+    // that starts at a neighbor of rid colored a
+    private boolean kempe(int rid, SearchState state) {
+        adjStamp++;
+        for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+            adjMark[graph.neighborAt(j)] = adjStamp;
+        }
+        for (int a = 0; a < k; a++) {
+            for (int b = 0; b < k; b++) {
+                if (a == b) continue;
+                int size = chain(rid, a, b, state);
+                if (size < 0) continue;
+                for (int i = 0; i < size; i++) state.unassign(queue[i]);
+                for (int i = 0; i < size; i++) {
+                    int r = queue[i];
+                    state.assign(r, chainColor[i] == a ? b : a);
+                }
+                kempeSwaps++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // collects the a/b chains through rid's neighbors colored a into queue.
+    // -1 if one of them holds a region outside the free set or a neighbor of rid
+    // colored b, since swapping it would just move the clash
+    private int chain(int rid, int a, int b, SearchState state) {
+        chainStamp++;
+        int qh = 0, qt = 0;
+        for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+            int nb = graph.neighborAt(j);
+            if (state.color[nb] != a || chainMark[nb] == chainStamp) continue;
+            if (member[nb] != stamp) return -1;
+            chainMark[nb] = chainStamp;
+            queue[qt++] = nb;
+        }
+        if (qt == 0) return -1; // a was not blocked by a neighbor in the first place
+        while (qh < qt) {
+            int cur = queue[qh];
+            chainColor[qh++] = state.color[cur];
+            for (int j = graph.neighborStart(cur), e = graph.neighborEnd(cur); j < e; j++) {
+                int nb = graph.neighborAt(j);
+                int c = state.color[nb];
+                if ((c != a && c != b) || chainMark[nb] == chainStamp) continue;
+                if (member[nb] != stamp) return -1;
+                if (c == b && adjMark[nb] == adjStamp) return -1;
+                chainMark[nb] = chainStamp;
+                queue[qt++] = nb;
+            }
+        }
+        return qt;
+    }
+}
+
+// what one top-level run of the recursion did, for the GUI and the logs. every run starts
+// its own (see DivideAndConquerBot.runDcSolve) and its forks write to the same one, so
+// runs side by side (probes, candidate colors) never mix. the bot publishes a run's
+// stats only when it reports that run's result
+class RunStats {
+    Set<Integer> partitionA = new HashSet<>();
+    Set<Integer> partitionB = new HashSet<>();
+    final Set<Integer> boundary = ConcurrentHashMap.newKeySet();
+    Set<Integer> separator = new HashSet<>();
+    int separatorSize = 0;
+    double balance = 1.0;
+    final AtomicInteger seamRepairs = new AtomicInteger();
+    final AtomicInteger separatorFallbacks = new AtomicInteger();
+    int kernelInput = 0, kernelCore = 0;
+    int components = 0;
+    List<int[]> failedComponents = new ArrayList<>();
+}
+
+// main solver logic using divide and conquer
+class DivideAndConquerBot {
+
+    static final int BASE_SIZE = 6; // stop dividing when small enough
+    static final int ISLAND_MEMO_SLACK = 8; // see solveBin
+    GameGraph graph;
+    int numColors;
+
+    // stored for visualization in the GUI, from the stats of the last reported run
+    public Set<Integer> lastPartitionA = new HashSet<>();
+    public Set<Integer> lastPartitionB = new HashSet<>();
+    public Set<Integer> lastBoundaryRegions = ConcurrentHashMap.newKeySet();
+
+    // nested dissection statistics for the top-level split
+    public Set<Integer> lastSeparator = new HashSet<>();
+    public int lastSeparatorSize = 0;
+    public double lastBalance = 1.0; // smaller side / larger side
+    public AtomicInteger seamRepairs = new AtomicInteger();
+    public AtomicInteger separatorFallbacks = new AtomicInteger();
+
+    // SEPARATOR colors a vertex separator first so the halves never need a seam repair,
+    // BISECT is the original split + merge
+    enum PartitionMode { BISECT, SEPARATOR }
+    PartitionMode partitionMode = PartitionMode.SEPARATOR;
+
+    // forward checking + AC-3 inside the backtracking searches
+    boolean propagation = true;
+
+    // chronological searches only try the lowest of the colors nothing around them uses yet
+    boolean symmetryBreaking = true;
+
+    // BACKJUMPING swaps the chronological searches for conflict-directed backjumping
+    // with nogood learning. the nogoods live for one reactToHumanMove (see beginMove)
+    enum SearchMode { CHRONOLOGICAL, BACKJUMPING }
+    SearchMode searchMode = SearchMode.CHRONOLOGICAL;
+    final NogoodStore nogoods;
+
+    // SAT hands every exact solve to a CDCL solver over a one-hot CNF of the map (see
+    // satSolve) instead of the divide and conquer recursion
+    enum Engine { DIVIDE_AND_CONQUER, SAT }
+    Engine engine = Engine.DIVIDE_AND_CONQUER;
+    CdclSolver sat; // built on first use and kept, learnt clauses included, for the whole game
+
+    // fork/join mode: the two halves of a split run as separate tasks on
+    // their own state overlays and are joined before the seam merge
+    boolean parallel = false;
+    int parallelCutoff = 0; // below this many free regions stay sequential, 0 = pick from pool size
+    boolean deterministic = true; // false lets a failing half cancel its sibling early
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    // LRU memo of solved partitions, see dcSolve. UNSAT marks a proven failure
+    static final int[] UNSAT = new int[0];
+    int memoCapacity = 4096; // 0 turns the memo off
+    final Map<MemoKey, int[]> memo = new LinkedHashMap<MemoKey, int[]>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MemoKey, int[]> eldest) {
+            return size() > memoCapacity;
+        }
+    };
+    public AtomicLong memoHits = new AtomicLong();
+    public AtomicLong memoMisses = new AtomicLong();
+    // smallest-last greedy + Kempe chains before any exhaustive search, see PlanarFastPath
+    boolean fastPath = true;
+    final ThreadLocal<PlanarFastPath> fastPaths;
+    // splitter for the separator fallback and the island split, one per thread
+    final ThreadLocal<GraphPartitioner> partitioners;
+    public AtomicInteger fastPathHits = new AtomicInteger();
+    public AtomicInteger fastPathMisses = new AtomicInteger();
+    // peel low-degree regions before the exhaustive search, see peel
+    boolean kernelize = true;
+    public int lastKernelInput = 0, lastKernelCore = 0; // free regions before and after the last peel
+    public AtomicLong kernelPeeled = new AtomicLong();
+    public int lastComponents = 0; // islands in the last core
+    public List<int[]> lastFailedComponents = new ArrayList<>();
+    boolean parallelCandidates = true; // findBestColorForRegion tries its colors concurrently on the pool
+
+    // last complete solution, kept between moves for solveIncremental.
+    // it always agrees with every colored region on the board (null = unknown)
+    SearchState solution;
+    // deadline of the current move (null = none), parent of every search it runs
+    CancelToken moveToken;
+    public SolveResult lastResult; // outcome of the last solve, solveIncremental or findBestColorForRegion
+    boolean quiet = false;         // no progress logging, for the speculative probes
+    static final int MAX_REPAIR = 64; // past this many regions a full solve is the better deal
+    public int lastRepairSize = 0;    // regions re-solved by the last incremental call, -1 = full solve
+    final int[] ballMark, ballDist, ballQueue;
+    int ballStamp = 0;
+
+    public DivideAndConquerBot(GameGraph graph) {
+        this.graph = graph;
+        this.numColors = graph.getNumColors();
+        this.ballMark = new int[graph.size()];
+        this.ballDist = new int[graph.size()];
+        this.ballQueue = new int[graph.size()];
+        this.nogoods = new NogoodStore(numColors, 2048, 8);
+        this.fastPaths = ThreadLocal.withInitial(() -> new PlanarFastPath(graph));
+        this.partitioners = ThreadLocal.withInitial(() -> new GraphPartitioner(graph));
+    }
+
+    // called once per bot move; nogoods learned during it are reused by every
+    // search of that move and dropped afterwards
+    public void beginMove() {
+        beginMove(0);
+    }
+
+    // same, with a budget for everything the move solves (0 = no limit). once it runs out
+    // the searches stop at their next poll and report TIMED_OUT with a best partial
+    public void beginMove(long budgetMillis) {
+        beginMove(budgetMillis, null);
+    }
+
+    // parent (may be null) lets another thread abort the whole move
+    public void beginMove(long budgetMillis, CancelToken parent) {
+        nogoods.clear();
+        moveToken = budgetMillis > 0 || parent != null ? new CancelToken(parent, budgetMillis) : null;
+    }
+
+    public void setPropagation(boolean on) { this.propagation = on; }
+    public void setParallel(boolean on) { this.parallel = on; }
+    public void setParallelCutoff(int regions) { this.parallelCutoff = regions; }
+    public void setDeterministic(boolean on) { this.deterministic = on; }
+    public void setPool(ForkJoinPool pool) { this.pool = pool; }
+    public void setPartitionMode(PartitionMode mode) { this.partitionMode = mode; }
+    public void setParallelCandidates(boolean on) { this.parallelCandidates = on; }
+    public void setSearchMode(SearchMode mode) { this.searchMode = mode; }
+    public void setFastPath(boolean on) { this.fastPath = on; }
+    public void setEngine(Engine engine) { this.engine = engine; }
+    public void setSymmetryBreaking(boolean on) { this.symmetryBreaking = on; }
+    public void setKernelize(boolean on) { this.kernelize = on; }
+
+    public void setMemoCapacity(int entries) {
+        synchronized (memo) {
+            memoCapacity = entries;
+            memo.clear();
+        }
+    }
+
+    public long getMemoHits() { return memoHits.get(); }
+    public long getMemoMisses() { return memoMisses.get(); }
+
+    private int cutoff() {
+        if (parallelCutoff > 0) return parallelCutoff;
+        // every fork copies the state, so aim for a few tasks per worker
+        return Math.max(BASE_SIZE * 8, graph.size() / (pool.getParallelism() * 4));
+    }
+
+    // runs the top level of the recursion over every uncolored region,
+    // inside the pool when parallel
+    private boolean runDcSolve(SearchState state) {
+        state.stats = new RunStats();
+        PartitionTree tree = graph.partitionTree(partitionMode == PartitionMode.SEPARATOR);
+        if (tree.root == null) return true;
+        int[] free = freeIn(tree.root.regions, state);
+        if (tryFastPath(free, state)) return true;
+        if (state.stopNow()) return false;
+        if (engine == Engine.SAT) return satSolve(free, state);
+
+        int[] peeled = kernelize ? peel(free, state) : new int[0];
+        if (state.stopNow()) {
+            state.deferred = null;
+            return false;
+        }
+        int[] core = peeled.length == 0 ? free : freeIn(free, state);
+        recordKernel(state.stats, free.length, core.length);
+
+        int[][] comps = partitioners.get().components(core, state);
+        if (comps == null) {
+            state.deferred = null;
+            return false;
+        }
+        state.stats.components = comps.length;
+        boolean ok;
+        if (comps.length > 1) {
+            ok = solveComponents(tree, core, comps, state);
+        } else if (parallel && core.length >= cutoff()) {
+            ok = pool.invoke(new HalfTask(tree.root, core, state, 0, null));
+        } else {
+            ok = dcSolve(tree.root, core, state, 0);
+        }
+        state.deferred = null;
+        if (!ok) return false;
+
+        // every peeled region still has a color left once the ones peeled after it are in
+        for (int i = peeled.length - 1; i >= 0; i--) {
+            state.assign(peeled[i], Integer.numberOfTrailingZeros(state.domain[peeled[i]]));
+        }
+        return true;
+    }
+
+    // the free regions fell apart into islands that share no edge, so each one is solved
+    // on its own. in parallel mode the islands are packed into one bin per worker (biggest
+    // first onto the lightest bin) and every bin runs on a single copy of the state.
+    // a failing island does not stop the others; all failures end up in the run's stats
+    private boolean solveComponents(PartitionTree tree, int[] core, int[][] comps, SearchState state) {
+        int bins = parallel && core.length >= cutoff() ? Math.min(comps.length, pool.getParallelism()) : 1;
+        List<List<int[]>> packed = new ArrayList<>();
+        int[] load = new int[bins];
+        for (int b = 0; b < bins; b++) packed.add(new ArrayList<>());
+        for (int[] comp : comps) {
+            int lightest = 0;
+            for (int b = 1; b < bins; b++) if (load[b] < load[lightest]) lightest = b;
+            packed.get(lightest).add(comp);
+            load[lightest] += comp.length;
+        }
+
+        List<int[]> failed = new ArrayList<>();
+        if (bins == 1) {
+            failed.addAll(solveBin(tree, core, packed.get(0), state));
+        } else {
+            SearchState[] copies = new SearchState[bins];
+            List<ForkJoinTask<List<int[]>>> tasks = new ArrayList<>();
+            for (int b = 0; b < bins; b++) {
+                SearchState copy = new SearchState(state);
+                List<int[]> bin = packed.get(b);
+                copies[b] = copy;
+                tasks.add(pool.submit(() -> solveBin(tree, core, bin, copy)));
+            }
+            for (int b = 0; b < bins; b++) {
+                List<int[]> binFailed = tasks.get(b).join();
+                failed.addAll(binFailed);
+                for (int[] comp : packed.get(b)) {
+                    if (binFailed.contains(comp)) continue;
+                    for (int rid : comp) {
+                        if (copies[b].color[rid] != -1) state.assign(rid, copies[b].color[rid]);
+                    }
+                }
+                state.stopped |= copies[b].stopped;
+            }
+        }
+
+        state.stats.failedComponents = failed;
+        for (int[] comp : failed) {
+            if (!quiet) System.out.println("No coloring found for the island of " + comp.length + " regions around region " + comp[0]);
+        }
+        return failed.isEmpty() && !state.stopped;
+    }
+
+    // solves the islands of one bin one after the other. everything else in the core stays
+    // deferred meanwhile, so the partition tree only walks the island being solved, from
+    // the smallest node that holds it. late in a game the islands are many and small, and
+    // starting each at the root would cost a root memo key and scan per island.
+    // returns the islands that failed, left uncolored
+    private List<int[]> solveBin(PartitionTree tree, int[] core, List<int[]> bin, SearchState state) {
+        boolean[] outer = state.deferred;
+        boolean[] mask = outer != null ? outer.clone() : new boolean[graph.size()];
+        for (int rid : core) mask[rid] = true;
+        state.deferred = mask;
+
+        List<int[]> failed = new ArrayList<>();
+        for (int[] comp : bin) {
+            for (int rid : comp) mask[rid] = false;
+            boolean ok;
+            if (comp.length <= BASE_SIZE) {
+                ok = search(comp, state);
+            } else {
+                PartitionTree.Node node = tree.holding(comp);
+                // an island straddling a big node's split rarely repeats its key there
+                ok = node.regions.length > ISLAND_MEMO_SLACK * comp.length
+                        ? divideAndConquer(node, comp, state, 0) : dcSolve(node, comp, state, 0);
+            }
+            if (!ok) {
+                for (int rid : comp) state.unassign(rid);
+                failed.add(comp);
+            }
+            for (int rid : comp) mask[rid] = true;
+            if (state.stopped) break;
+        }
+        state.deferred = outer;
+        return failed;
+    }
+
+    // low-degree kernelization: a free region with fewer free neighbors than colors its
+    // colored neighbors leave it can always be colored after them, so it is marked
+    // deferred and left out of the search. peeling one can make its neighbors peelable.
+    // returns the peeled regions in peeling order; the rest of free is the core
+    private int[] peel(int[] free, SearchState state) {
+        int n = graph.size();
+        int[] freeDeg = new int[n];
+        boolean[] inFree = new boolean[n];
+        boolean[] deferred = new boolean[n];
+        for (int rid : free) inFree[rid] = true;
+
+        int[] queue = new int[free.length];
+        int qh = 0, qt = 0;
+        for (int rid : free) {
+            if (state.shouldStop()) return new int[0];
+            for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+                if (inFree[graph.neighborAt(j)]) freeDeg[rid]++;
+            }
+            if (freeDeg[rid] < Integer.bitCount(state.domain[rid])) {
+                deferred[rid] = true;
+                queue[qt++] = rid;
+            }
+        }
+        while (qh < qt) {
+            if (state.shouldStop()) return new int[0];
+            int rid = queue[qh++];
+            for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+                int nb = graph.neighborAt(j);
+                if (!inFree[nb] || deferred[nb]) continue;
+                if (--freeDeg[nb] < Integer.bitCount(state.domain[nb])) {
+                    deferred[nb] = true;
+                    queue[qt++] = nb;
+                }
             }
-            
-            // force min size if too small
-            while (region.cells.size() < min) {
-                Cell exp = nearestUnvisited(region, visited);
-                if (exp == null) break;
-                visited[exp.row][exp.col] = true;
-                exp.regionId = i;
-                region.addCell(exp);
-            }
-            regions.add(region);
-        }
-
-        // fill in any empty spots (orphans)
-        for (int r = 0; r < gridRows; r++) {
-            for (int c = 0; c < gridCols; c++) {
-                Cell cell = grid[r][c];
-                if (cell.regionId == -1) {
-                    int nr = nearestRegion(cell);
-                    cell.regionId = nr;
-                    regions.get(nr).addCell(cell);
+        }
+        if (qt > 0) state.deferred = deferred;
+        return Arrays.copyOf(queue, qt);
+    }
+
+    private void recordKernel(RunStats stats, int input, int core) {
+        stats.kernelInput = input;
+        stats.kernelCore = core;
+        kernelPeeled.addAndGet(input - core);
+        if (input > core && !quiet) {
+            System.out.println("Kernel: " + input + " free regions -> core of " + core
+                    + " (" + (input - core) + " peeled)");
+        }
+    }
+
+    // variable (rid, c) is rid * k + c: region rid has color c. the clauses say every region
+    // has exactly one color and neighbors never share one; locked clues are units. every
+    // other colored region of the state is passed as an assumption, which keeps the clause
+    // database valid for the next call, so what it learnt during one move helps the next
+    private synchronized boolean satSolve(int[] ids, SearchState state) {
+        if (sat == null) sat = buildCnf();
+        List<Integer> assumptions = new ArrayList<>();
+        for (int rid = 0; rid < state.n; rid++) {
+            int c = state.color[rid];
+            if (c != -1 && !graph.getRegions().get(rid).isLocked) assumptions.add(CdclSolver.pos(rid * numColors + c));
+        }
+        int[] lits = new int[assumptions.size()];
+        for (int i = 0; i < lits.length; i++) lits[i] = assumptions.get(i);
+
+        sat.cancel = state.cancel;
+        CdclSolver.Status status = sat.solve(lits);
+        sat.cancel = null;
+        if (status == CdclSolver.Status.UNKNOWN) {
+            state.stopped = true;
+            return false;
+        }
+        if (status == CdclSolver.Status.UNSAT) return false;
+        for (int rid : ids) {
+            if (state.color[rid] != -1) continue;
+            for (int c = 0; c < numColors; c++) {
+                if (sat.modelValue(rid * numColors + c)) {
+                    state.assign(rid, c);
+                    break;
                 }
             }
         }
-        return regions;
+        return true;
+    }
+
+    private CdclSolver buildCnf() {
+        int n = graph.size(), k = numColors;
+        CdclSolver s = new CdclSolver(n * k);
+        for (int rid = 0; rid < n; rid++) {
+            int[] atLeastOne = new int[k];
+            for (int c = 0; c < k; c++) atLeastOne[c] = CdclSolver.pos(rid * k + c);
+            s.addClause(atLeastOne);
+            for (int a = 0; a < k; a++) {
+                for (int b = a + 1; b < k; b++) s.addClause(CdclSolver.neg(rid * k + a), CdclSolver.neg(rid * k + b));
+            }
+            for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+                int nb = graph.neighborAt(j);
+                if (nb < rid) continue;
+                for (int c = 0; c < k; c++) s.addClause(CdclSolver.neg(rid * k + c), CdclSolver.neg(nb * k + c));
+            }
+        }
+        for (Region r : graph.getRegions()) {
+            if (r.isLocked && r.color != -1) s.addClause(CdclSolver.pos(r.id * k + r.color));
+        }
+        if (!quiet) System.out.println("SAT encoding: " + (n * k) + " variables, " + s.clauses.size() + " clauses");
+        return s;
+    }
+
+    // true if the planar fast path colored all of ids; on false the state is unchanged
+    private boolean tryFastPath(int[] ids, SearchState state) {
+        if (!fastPath || ids.length == 0) return false;
+        if (fastPaths.get().color(ids, state)) {
+            fastPathHits.incrementAndGet();
+            return true;
+        }
+        if (!state.stopped) fastPathMisses.incrementAndGet();
+        return false;
+    }
+
+    // one half of a split, solved on its own overlay.
+    // node is null for the tree-less fallback recursion
+    private class HalfTask extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        final PartitionTree.Node node;
+        final int[] free;
+        final SearchState state;
+        final int depth;
+        final CancelToken sibling;
+
+        HalfTask(PartitionTree.Node node, int[] free, SearchState state, int depth, CancelToken sibling) {
+            this.node = node;
+            this.free = free;
+            this.state = state;
+            this.depth = depth;
+            this.sibling = sibling;
+        }
+
+        @Override
+        protected Boolean compute() {
+            boolean ok = node != null ? dcSolve(node, free, state, depth) : bisectSolve(free, state, depth);
+            if (!ok && sibling != null && !deterministic) sibling.cancel();
+            return ok;
+        }
+    }
+
+    public Map<Integer, Integer> solve() {
+        SolveResult result = solve(moveToken);
+        return result.solved() ? result.toMap() : null;
+    }
+
+    // solves the board within budgetMillis (and whatever is left of the move budget).
+    // never throws away work: a timeout still returns the best partial assignment
+    public SolveResult solveWithin(long budgetMillis) {
+        return solve(new CancelToken(moveToken, budgetMillis));
+    }
+
+    private SolveResult solve(CancelToken token) {
+        long start = System.nanoTime();
+        List<Region> regions = graph.getRegions();
+
+        // initialize current state
+        SearchState state = SearchState.fromGraph(graph);
+        state.cancel = token;
+
+        // check if current state is already invalid
+        for (Region r : regions) {
+            if (state.inConflict(r.id)) {
+                System.out.println("Constraint check failed: Region " + r.id + " conflicts with a neighbor");
+                return finish(SolveResult.Status.UNSAT, state, start);
+            }
+        }
+
+        int freeCount = 0;
+        for (Region r : regions) {
+            if (!r.isLocked && r.color == -1) freeCount++;
+        }
+        if (state.stopNow()) return finish(SolveResult.Status.TIMED_OUT, state, start);
+
+        if (freeCount == 0) {
+            return finish(isFullyValid(state) ? SolveResult.Status.SOLVED : SolveResult.Status.UNSAT, state, start);
+        }
+
+        System.out.println("Starting solver on " + freeCount + " regions...");
+
+        boolean ok = runDcSolve(state);
+        publish(state.stats);
+        solution = ok && isFullyValid(state) ? state : null;
+        if (solution == null && !state.stopNow() && engine != Engine.SAT) {
+            SearchState check = SearchState.fromGraph(graph);
+            check.cancel = token;
+            if (exhaustiveCheck(check)) solution = check;
+            else if (check.stopNow()) return finish(SolveResult.Status.TIMED_OUT, state, start);
+        }
+        if (solution != null) {
+            solution.cancel = null;
+            return finish(SolveResult.Status.SOLVED, solution, start);
+        }
+        return finish(state.stopNow() ? SolveResult.Status.TIMED_OUT : SolveResult.Status.UNSAT, state, start);
+    }
+
+    // the recursion is not exhaustive: a seam repair or a separator fallback can miss a
+    // solution. so before its failure counts as UNSAT the sat engine solves the same board
+    // again, from state, which holds the board and the move being tried and nothing else.
+    // false with state.stopNow() means the check ran out of time and proved nothing
+    private boolean exhaustiveCheck(SearchState state) {
+        int[] all = new int[state.n];
+        for (int i = 0; i < all.length; i++) all[i] = i;
+        return satSolve(freeIn(all, state), state) && isFullyValid(state);
+    }
+
+    // the stats the GUI and the logs see from now on
+    private void publish(RunStats stats) {
+        lastPartitionA = stats.partitionA;
+        lastPartitionB = stats.partitionB;
+        lastBoundaryRegions = stats.boundary;
+        lastSeparator = stats.separator;
+        lastSeparatorSize = stats.separatorSize;
+        lastBalance = stats.balance;
+        seamRepairs.set(stats.seamRepairs.get());
+        separatorFallbacks.set(stats.separatorFallbacks.get());
+        lastKernelInput = stats.kernelInput;
+        lastKernelCore = stats.kernelCore;
+        lastComponents = stats.components;
+        lastFailedComponents = stats.failedComponents;
+    }
+
+    // publishes the top-level split of the board as it is now, for a move answered
+    // without a solve (see BotStrategy.reactFromTable)
+    public void publishBoardSplit() {
+        RunStats stats = new RunStats();
+        PartitionTree tree = graph.partitionTree(partitionMode == PartitionMode.SEPARATOR);
+        if (tree.root != null && !tree.root.isLeaf()) {
+            SearchState state = SearchState.fromGraph(graph);
+            recordSplit(stats, freeIn(tree.root.left.regions, state), freeIn(tree.root.right.regions, state),
+                    freeIn(tree.root.separator, state));
+        }
+        publish(stats);
+    }
+
+    // records the outcome of an entry point in lastResult
+    private SolveResult finish(SolveResult.Status status, SearchState state, long start) {
+        int[] colors = status == SolveResult.Status.SOLVED ? state.color.clone() : bestPartial(state);
+        // a run that overran its deadline never reports a proof
+        if (status == SolveResult.Status.UNSAT && state.stopNow()) status = SolveResult.Status.TIMED_OUT;
+        lastResult = new SolveResult(status, colors, (System.nanoTime() - start) / 1_000_000);
+        if (status == SolveResult.Status.TIMED_OUT) {
+            System.out.println("Out of time after " + lastResult.elapsedMillis + " ms, best partial colors "
+                    + lastResult.colored + " of " + colors.length + " regions");
+        }
+        return lastResult;
     }
 
-    private List<Cell> pickSeeds(int n) {
-        List<Cell> seeds = new ArrayList<>();
-        int minDist = (int) Math.sqrt((gridRows * gridCols) / n);
-        int attempts = 1000;
-        
-        while (seeds.size() < n && attempts-- > 0) {
-            Cell c = grid[random.nextInt(gridRows)][random.nextInt(gridCols)];
-            boolean ok = true;
-            for (Cell s : seeds) {
-                if (Math.sqrt(Math.pow(c.row - s.row, 2) + Math.pow(c.col - s.col, 2)) < minDist) {
-                    ok = false;
+    // best effort assignment once a search gave up: the deepest point it reached, minus
+    // clashes it had not repaired yet (seams), extended greedily wherever a color is left.
+    // board colors always win
+    private int[] bestPartial(SearchState state) {
+        int[] colors = (state.stoppedColors != null ? state.stoppedColors : state.color).clone();
+        List<Region> regions = graph.getRegions();
+        for (Region r : regions) {
+            if (r.color != -1) colors[r.id] = r.color;
+        }
+        for (int rid = 0; rid < colors.length; rid++) {
+            if (colors[rid] == -1 || regions.get(rid).color != -1) continue;
+            for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+                if (colors[graph.neighborAt(j)] == colors[rid]) {
+                    colors[rid] = -1;
                     break;
                 }
             }
-            if (ok) seeds.add(c);
         }
-        
-        // if we couldn't find good spaced seeds, just pick random ones
-        while (seeds.size() < n) {
-            Cell c = grid[random.nextInt(gridRows)][random.nextInt(gridCols)];
-            if (!seeds.contains(c)) seeds.add(c);
+        for (int rid = 0; rid < colors.length; rid++) {
+            if (colors[rid] != -1) continue;
+            int used = 0;
+            for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+                int c = colors[graph.neighborAt(j)];
+                if (c != -1) used |= 1 << c;
+            }
+            int avail = ~used & state.fullMask;
+            if (avail != 0) colors[rid] = Integer.numberOfTrailingZeros(avail);
         }
-        return seeds;
+        return colors;
     }
 
-    private Cell nearestUnvisited(Region region, boolean[][] visited) {
-        for (Cell rc : region.cells) {
-            for (Cell nb : neighbors(rc)) {
-                if (!visited[nb.row][nb.col]) return nb;
-            }
+    // re-checks the board after changedRid got its current color, reusing the last
+    // solution: nothing to do if they agree, otherwise only a ball of free regions
+    // around the change is re-solved, doubling its radius while the repair fails
+    public boolean solveIncremental(int changedRid) {
+        long start = System.nanoTime();
+        if (solution == null) {
+            lastRepairSize = -1;
+            return solve(moveToken).solved();
         }
-        return null;
-    }
+        int target = graph.getRegions().get(changedRid).color;
+        if (solution.color[changedRid] == target) {
+            lastRepairSize = 0;
+            publish(new RunStats());
+            finish(SolveResult.Status.SOLVED, solution, start);
+            return true;
+        }
+        int previous = solution.color[changedRid];
+        solution.cancel = moveToken;
+        solution.stopped = false;
+        solution.stoppedColors = null;
+
+        int lastSize = -1;
+        for (int radius = 1; ; radius *= 2) {
+            int[] ball = freeBall(changedRid, radius);
+            if (ball == null) break; // too big, a full solve is cheaper
+            if (solution.stopNow()) break; // out of time, see below
+            if (ball.length == lastSize) {
+                // the ball already holds every free region connected to the change and the
+                // rest of the solution is untouched, so this is a real dead end
+                lastRepairSize = ball.length;
+                solution.cancel = null;
+                finish(SolveResult.Status.UNSAT, solution, start);
+                return false;
+            }
 
-    private List<Cell> neighbors(Cell cell) {
-        List<Cell> list = new ArrayList<>();
-        int[][] dirs = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
-        for (int[] d : dirs) {
-            int nr = cell.row + d[0];
-            int nc = cell.col + d[1];
-            if (nr >= 0 && nr < gridRows && nc >= 0 && nc < gridCols) {
-                list.add(grid[nr][nc]);
+            int[] saved = new int[ball.length];
+            for (int i = 0; i < ball.length; i++) {
+                saved[i] = solution.color[ball[i]];
+                solution.unassign(ball[i]);
+            }
+            solution.unassign(changedRid);
+            solution.assign(changedRid, target);
+
+            boolean repaired = tryFastPath(ball, solution)
+                    || (engine == Engine.SAT ? satSolve(ball, solution) : search(ball, solution));
+            if (repaired) {
+                lastRepairSize = ball.length;
+                solution.cancel = null;
+                finish(SolveResult.Status.SOLVED, solution, start);
+                RunStats stats = new RunStats();
+                stats.boundary.addAll(toSet(ball));
+                publish(stats);
+                return true;
             }
-        }
-        return list;
-    }
 
-    private int nearestRegion(Cell cell) {
-        for (Cell nb : neighbors(cell)) {
-            if (nb.regionId != -1) return nb.regionId;
-        }
-        int best = 0;
-        double bestD = Double.MAX_VALUE;
-        for (Region r : regions) {
-            Point cen = r.getCentroid();
-            double d = Math.sqrt(Math.pow(cell.row - cen.y, 2) + Math.pow(cell.col - cen.x, 2));
-            if (d < bestD) {
-                bestD = d;
-                best = r.id;
+            // put the old solution back before widening
+            for (int rid : ball) solution.unassign(rid);
+            solution.unassign(changedRid);
+            if (previous != -1) solution.assign(changedRid, previous);
+            for (int i = 0; i < ball.length; i++) {
+                if (saved[i] != -1) solution.assign(ball[i], saved[i]);
             }
+            if (solution.stopNow()) break;
+            lastSize = ball.length;
+        }
+        if (solution.stopped) {
+            // out of time: the old solution no longer matches the board
+            finish(SolveResult.Status.TIMED_OUT, solution, start);
+            solution = null;
+            return false;
         }
-        return best;
-    }
-
-    public Cell[][] getGrid() { return grid; }
-    public int getGridRows() { return gridRows; }
-    public int getGridCols() { return gridCols; }
-}
 
-// this class handles the graph structure (adjacency)
-class GameGraph {
-    List<Region> regions;
-    Map<Integer, Set<Integer>> adj = new HashMap<>();
-    int numColors;
+        lastRepairSize = -1;
+        solution.cancel = null;
+        return solve(moveToken).solved();
+    }
 
-    public GameGraph(List<Region> regions, Cell[][] grid, int gridRows, int gridCols, int numColors) {
-        this.regions = regions;
-        this.numColors = numColors;
-        for (Region r : regions) {
-            adj.put(r.id, new HashSet<>());
-        }
-
-        // build adjacency list from the grid
-        for (int r = 0; r < gridRows; r++) {
-            for (int c = 0; c < gridCols; c++) {
-                int rid = grid[r][c].regionId;
-                int[][] dirs = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
-                for (int[] d : dirs) {
-                    int nr = r + d[0];
-                    int nc = c + d[1];
-                    if (nr >= 0 && nr < gridRows && nc >= 0 && nc < gridCols) {
-                        int nid = grid[nr][nc].regionId;
-                        if (nid != rid) {
-                            adj.get(rid).add(nid);
-                        }
+    // solves the board with rid colored c for a speculative check. unlike the entry points
+    // above it leaves the kept solution, lastResult and the published stats alone (the run
+    // keeps its own RunStats) and logs nothing. UNSAT is always a proof, see exhaustiveCheck
+    public SolveResult probe(int rid, int c, long budgetMillis) {
+        long start = System.nanoTime();
+        CancelToken token = new CancelToken(moveToken, budgetMillis);
+        SearchState state = SearchState.fromGraph(graph);
+        state.cancel = token;
+        SolveResult.Status status = SolveResult.Status.UNSAT;
+        if ((state.domain[rid] & (1 << c)) != 0) {
+            state.assign(rid, c);
+            quiet = true;
+            try {
+                if (runDcSolve(state) && isFullyValid(state)) {
+                    status = SolveResult.Status.SOLVED;
+                } else if (state.stopNow()) {
+                    status = SolveResult.Status.TIMED_OUT;
+                } else if (engine != Engine.SAT) {
+                    state = SearchState.fromGraph(graph);
+                    state.cancel = token;
+                    state.assign(rid, c);
+                    if (exhaustiveCheck(state)) {
+                        status = SolveResult.Status.SOLVED;
+                    } else if (state.stopNow()) {
+                        status = SolveResult.Status.TIMED_OUT;
                     }
                 }
+            } finally {
+                quiet = false;
             }
         }
+        return new SolveResult(status, state.color.clone(), (System.nanoTime() - start) / 1_000_000);
     }
 
-    public Set<Integer> availableColors(int regionId) {
-        Set<Integer> avail = new HashSet<>();
-        for (int i = 0; i < numColors; i++) avail.add(i);
-        
-        for (int n : adj.get(regionId)) {
-            int c = regions.get(n).color;
-            if (c != -1) avail.remove(c);
+    // takes over a full solution of the board found elsewhere (e.g. a speculative
+    // witness) as the one solveIncremental repairs from
+    public void useSolution(int[] colors) {
+        SearchState s = SearchState.fromGraph(graph);
+        for (int rid = 0; rid < s.n; rid++) {
+            if (s.color[rid] == -1) s.assign(rid, colors[rid]);
         }
-        return avail;
+        solution = isFullyValid(s) ? s : null;
     }
 
-    // checks if a region conflicts with its neighbors
-    public boolean inConflict(int regionId) {
-        int c = regions.get(regionId).color;
-        if (c == -1) return false;
-        for (int n : adj.get(regionId)) {
-            if (regions.get(n).color == c) return true;
-        }
-        return false;
+    public int solutionColor(int rid) {
+        return solution == null ? -1 : solution.color[rid];
     }
 
-    public List<Region> getRegions() { return regions; }
-    public Set<Integer> getNeighbors(int rid) { return adj.get(rid); }
-    public int getNumColors() { return numColors; }
-}
-
-// main solver logic using divide and conquer
-class DivideAndConquerBot {
-
-    static final int BASE_SIZE = 6; // stop dividing when small enough
-    GameGraph graph;
-    int numColors;
-
-    // stored for visualization in the GUI
-    public Set<Integer> lastPartitionA = new HashSet<>();
-    public Set<Integer> lastPartitionB = new HashSet<>();
-    public Set<Integer> lastBoundaryRegions = new HashSet<>();
+    // the board changed in a way the solution does not know about
+    public void invalidateSolution() {
+        solution = null;
+    }
 
-    public DivideAndConquerBot(GameGraph graph) {
-        this.graph = graph;
-        this.numColors = graph.getNumColors();
+    // regions uncolored on the board within radius steps of rid, walking only through
+    // uncolored regions. null once it would exceed MAX_REPAIR
+    private int[] freeBall(int rid, int radius) {
+        ballStamp++;
+        int qh = 0, qt = 0;
+        ballMark[rid] = ballStamp;
+        ballDist[rid] = 0;
+        ballQueue[qt++] = rid;
+        while (qh < qt) {
+            int cur = ballQueue[qh++];
+            if (ballDist[cur] == radius) continue;
+            for (int j = graph.neighborStart(cur), e = graph.neighborEnd(cur); j < e; j++) {
+                int nb = graph.neighborAt(j);
+                if (ballMark[nb] == ballStamp || graph.getRegions().get(nb).color != -1) continue;
+                if (qt > MAX_REPAIR) return null;
+                ballMark[nb] = ballStamp;
+                ballDist[nb] = ballDist[cur] + 1;
+                ballQueue[qt++] = nb;
+            }
+        }
+        return Arrays.copyOfRange(ballQueue, 1, qt);
     }
 
-    public Map<Integer, Integer> solve() {
-        List<Region> regions = graph.getRegions();
-        Map<Integer, Integer> assignment = new HashMap<>();
+    // memoized entry to the recursion: a node's outcome only depends on the colors of its
+    // own regions and of the regions around it, so a repeat of that signature is answered
+    // from the cache. failures are only cached when the search was exhaustive
+    private boolean dcSolve(PartitionTree.Node node, int[] free, SearchState state, int depth) {
+        if (memoCapacity == 0 || free.length == 0) return divideAndConquer(node, free, state, depth);
+        if (state.stopNow()) return false;
+
+        MemoKey key = new MemoKey(partitionMode, node, state, graph);
+        int[] cached;
+        synchronized (memo) {
+            cached = memo.get(key);
+        }
+        if (cached != null) {
+            memoHits.incrementAndGet();
+            if (cached == UNSAT) return false;
+            for (int i = 0; i < node.regions.length; i++) {
+                int rid = node.regions[i];
+                if (cached[i] != -1 && state.color[rid] == -1) state.assign(rid, cached[i]);
+            }
+            return true;
+        }
+        memoMisses.incrementAndGet();
+
+        boolean ok = divideAndConquer(node, free, state, depth);
+        int[] value = null;
+        if (ok) {
+            value = new int[node.regions.length];
+            for (int i = 0; i < value.length; i++) value[i] = state.color[node.regions[i]];
+        } else if (!state.stopped && (free.length <= BASE_SIZE || node.isLeaf())) {
+            value = UNSAT;
+        }
+        if (value != null) {
+            synchronized (memo) {
+                memo.put(key, value);
+            }
+        }
+        return ok;
+    }
 
-        // initialize current state
-        for (Region r : regions) assignment.put(r.id, r.color);
+    // cache key: partition id plus the colors inside and around it
+    static final class MemoKey {
+        final PartitionMode mode;
+        final int nodeId;
+        final int[] signature;
+        final int hash;
+
+        MemoKey(PartitionMode mode, PartitionTree.Node node, SearchState state, GameGraph graph) {
+            int[] halo = node.halo(graph);
+            this.mode = mode;
+            this.nodeId = node.id;
+            this.signature = new int[node.regions.length + halo.length];
+            int k = 0;
+            for (int rid : node.regions) signature[k++] = code(state, rid);
+            for (int rid : halo) signature[k++] = code(state, rid);
+            this.hash = (Arrays.hashCode(signature) * 31 + nodeId) * 31 + mode.ordinal();
+        }
 
-        // check if current state is already invalid
-        for (Region r : regions) {
-            if (r.color == -1) continue;
-            for (int n : graph.getNeighbors(r.id)) {
-                if (assignment.getOrDefault(n, -1) == r.color) {
-                    System.out.println("Constraint check failed: Region " + r.id + " conflicts with " + n);
-                    return null;
-                }
-            }
+        // deferred regions get their own code so a kernel run never reuses a full answer
+        private static int code(SearchState state, int rid) {
+            int c = state.color[rid];
+            return c == -1 && state.deferred != null && state.deferred[rid] ? -2 : c;
         }
 
-        List<Integer> free = new ArrayList<>();
-        for (Region r : regions) {
-            if (!r.isLocked && r.color == -1) free.add(r.id);
+        @Override
+        public int hashCode() { return hash; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MemoKey)) return false;
+            MemoKey other = (MemoKey) o;
+            return hash == other.hash && nodeId == other.nodeId && mode == other.mode
+                    && Arrays.equals(signature, other.signature);
         }
+    }
 
-        if (free.isEmpty()) {
-            return isFullyValid(assignment) ? assignment : null;
+    // recursive function over the cached partition tree.
+    // free = the node's regions that are still uncolored, the only ones solved here
+    private boolean divideAndConquer(PartitionTree.Node node, int[] free, SearchState state, int depth) {
+        // base case: small size, just use backtracking
+        if (free.length <= BASE_SIZE || node.isLeaf()) {
+            return search(free, state);
         }
 
-        lastPartitionA = new HashSet<>();
-        lastPartitionB = new HashSet<>();
-        lastBoundaryRegions = new HashSet<>();
+        // DIVIDE: the split is already in the tree, only restrict it
+        int[] sep = freeIn(node.separator, state);
+        int[] left = freeIn(node.left.regions, state);
+        int[] right = freeIn(node.right.regions, state);
 
-        System.out.println("Starting solver on " + free.size() + " regions...");
+        if (depth == 0) recordSplit(state.stats, left, right, sep);
 
-        boolean ok = dcSolve(free, assignment, 0);
-        if (!ok) return null;
+        if (node.separator.length == 0) {
+            return mergeSolve(node.left, left, node.right, right, state, depth);
+        }
 
-        return isFullyValid(assignment) ? assignment : null;
+        // nested dissection: color the separator first, then the sides share no
+        // edges and can be solved with no seam to repair
+        if (search(sep, state) && conquer(node.left, left, node.right, right, state, depth)) {
+            return true;
+        }
+        if (state.stopped) return false;
+
+        // the separator coloring boxed one side in: redo this subtree with seam merges.
+        // the fallback never dissects again, otherwise every failing level would
+        // retry both ways and the work would blow up on lopsided splits
+        state.stats.separatorFallbacks.incrementAndGet();
+        for (int rid : free) state.unassign(rid);
+        return bisectSolve(free, state, depth);
     }
 
-    // recursive function
-    private boolean dcSolve(List<Integer> free, Map<Integer, Integer> assignment, int depth) {
-        // base case: small size, just use backtracking
-        if (free.size() <= BASE_SIZE) {
-            return backtrack(new ArrayList<>(free), 0, assignment);
+    // tree-less split + merge, only used as the separator fallback
+    private boolean bisectSolve(int[] free, SearchState state, int depth) {
+        if (free.length <= BASE_SIZE) {
+            return search(free, state);
         }
+        if (state.stopNow()) return false;
+        int[][] parts = partitioners.get().bisect(free);
+        if (depth == 0) recordSplit(state.stats, parts[0], parts[1], new int[0]);
+        return mergeSolve(null, parts[0], null, parts[1], state, depth);
+    }
 
-        // DIVIDE: split graph into two parts
-        List<Integer>[] parts = graphBisect(free);
-        List<Integer> left = parts[0];
-        List<Integer> right = parts[1];
-
-        // fail-safe if split didn't work well
-        if (left.isEmpty() || right.isEmpty()) {
-            int mid = free.size() / 2;
-            left = new ArrayList<>(free.subList(0, mid));
-            right = new ArrayList<>(free.subList(mid, free.size()));
+    // stats for the top-level split, shown in the GUI. islands solved side by side all
+    // split at depth 0, hence the lock
+    private static void recordSplit(RunStats stats, int[] left, int[] right, int[] sep) {
+        synchronized (stats) {
+            stats.partitionA = toSet(left);
+            stats.partitionB = toSet(right);
+            stats.separator = toSet(sep);
+            stats.separatorSize = sep.length;
+            int small = Math.min(left.length, right.length);
+            int big = Math.max(left.length, right.length);
+            stats.balance = big == 0 ? 1.0 : (double) small / big;
         }
+    }
 
-        if (depth == 0) {
-            lastPartitionA = new HashSet<>(left);
-            lastPartitionB = new HashSet<>(right);
+    // CONQUER: solve left then right (or both at once)
+    private boolean conquer(PartitionTree.Node leftNode, int[] left, PartitionTree.Node rightNode, int[] right, SearchState state, int depth) {
+        if (parallel && left.length + right.length >= cutoff()) {
+            return solveHalvesInParallel(leftNode, left, rightNode, right, state, depth);
         }
+        return solveHalf(leftNode, left, state, depth + 1) && solveHalf(rightNode, right, state, depth + 1);
+    }
 
-        // CONQUER: solve left then right
-        if (!dcSolve(left, assignment, depth + 1)) return false;
-        if (!dcSolve(right, assignment, depth + 1)) return false;
+    private boolean solveHalf(PartitionTree.Node node, int[] free, SearchState state, int depth) {
+        return node != null ? dcSolve(node, free, state, depth) : bisectSolve(free, state, depth);
+    }
+
+    // CONQUER both halves, then MERGE by re-solving the seam conflicts
+    private boolean mergeSolve(PartitionTree.Node leftNode, int[] left, PartitionTree.Node rightNode, int[] right, SearchState state, int depth) {
+        if (!conquer(leftNode, left, rightNode, right, state, depth)) return false;
 
         // MERGE: fix the boundary (seam) conflicts
-        Set<Integer> seam = findSeamConflicts(left, right, assignment);
-        lastBoundaryRegions.addAll(seam);
+        Set<Integer> seam = findSeamConflicts(left, right, state);
+        state.stats.boundary.addAll(seam);
 
         if (!seam.isEmpty()) {
-            List<Integer> seamList = new ArrayList<>(seam);
+            state.stats.seamRepairs.incrementAndGet();
+            int[] seamIds = toArray(seam);
             // reset seam colors
-            for (int rid : seamList) assignment.put(rid, -1);
+            for (int rid : seamIds) state.unassign(rid);
 
             // try to fix seam
-            if (!backtrack(seamList, 0, assignment)) {
+            if (!search(seamIds, state)) {
                 return false;
             }
         }
@@ -360,77 +2528,56 @@ class DivideAndConquerBot {
         return true;
     }
 
-    // splits the graph based on distance (bfs)
-    @SuppressWarnings("unchecked")
-    private List<Integer>[] graphBisect(List<Integer> free) {
-        Set<Integer> freeSet = new HashSet<>(free);
-
-        // lambda to get distances
-        java.util.function.Function<Integer, Map<Integer, Integer>> bfsDist = (src) -> {
-            Map<Integer, Integer> dist = new HashMap<>();
-            Queue<Integer> q = new LinkedList<>();
-            dist.put(src, 0);
-            q.add(src);
-            while (!q.isEmpty()) {
-                int cur = q.poll();
-                for (int nb : graph.getNeighbors(cur)) {
-                    if (freeSet.contains(nb) && !dist.containsKey(nb)) {
-                        dist.put(nb, dist.get(cur) + 1);
-                        q.add(nb);
-                    }
-                }
-            }
-            return dist;
-        };
-
-        int seedA = free.get(0);
-        Map<Integer, Integer> distFromSeed = bfsDist.apply(seedA);
-
-        // find farthest node from seedA
-        int nodeA = seedA;
-        int maxD = -1;
-        for(Map.Entry<Integer, Integer> e : distFromSeed.entrySet()){
-            if(e.getValue() > maxD) {
-                maxD = e.getValue();
-                nodeA = e.getKey();
-            }
-        }
+    // forks the left half onto a copy of the state and solves the right half in place.
+    // both halves start from the same snapshot, so the result does not depend on
+    // scheduling or pool size; the left colors are committed back after the join
+    private boolean solveHalvesInParallel(PartitionTree.Node leftNode, int[] left, PartitionTree.Node rightNode, int[] right, SearchState state, int depth) {
+        CancelToken parentToken = state.cancel;
+        CancelToken leftToken = new CancelToken(parentToken);
+        CancelToken rightToken = new CancelToken(parentToken);
 
-        Map<Integer, Integer> distFromA = bfsDist.apply(nodeA);
+        SearchState leftState = new SearchState(state);
+        leftState.cancel = leftToken;
+        HalfTask leftTask = new HalfTask(leftNode, left, leftState, depth + 1, rightToken);
+        leftTask.fork();
 
-        // find farthest from nodeA to get nodeB
-        int nodeB = free.get(free.size() / 2);
-        maxD = -1;
-        for(Map.Entry<Integer, Integer> e : distFromA.entrySet()){
-            if(!e.getKey().equals(nodeA) && e.getValue() > maxD) {
-                maxD = e.getValue();
-                nodeB = e.getKey();
-            }
-        }
+        state.cancel = rightToken;
+        boolean rightOk = solveHalf(rightNode, right, state, depth + 1);
+        if (!rightOk && !deterministic) leftToken.cancel();
+        boolean leftOk = leftTask.join();
 
-        Map<Integer, Integer> distFromB = bfsDist.apply(nodeB);
+        state.cancel = parentToken;
+        state.stopped = parentToken != null && parentToken.isCancelled();
+        if (!leftOk || !rightOk) return false;
 
-        List<Integer> partA = new ArrayList<>();
-        List<Integer> partB = new ArrayList<>();
-        for (int rid : free) {
-            int dA = distFromA.getOrDefault(rid, Integer.MAX_VALUE / 2);
-            int dB = distFromB.getOrDefault(rid, Integer.MAX_VALUE / 2);
-            if (dA <= dB) partA.add(rid);
-            else partB.add(rid);
+        for (int rid : left) {
+            int c = leftState.color[rid];
+            if (c != -1 && state.color[rid] == -1) state.assign(rid, c);
         }
+        return true;
+    }
 
-        return new List[]{ partA, partB };
+    // the regions of ids that are still uncolored
+    private static int[] freeIn(int[] ids, SearchState state) {
+        int k = 0;
+        for (int rid : ids) if (state.isOpen(rid)) k++;
+        if (k == ids.length) return ids;
+        int[] out = new int[k];
+        k = 0;
+        for (int rid : ids) if (state.isOpen(rid)) out[k++] = rid;
+        return out;
     }
 
-    private Set<Integer> findSeamConflicts(List<Integer> left, List<Integer> right, Map<Integer, Integer> assignment) {
-        Set<Integer> rightSet = new HashSet<>(right);
+    private Set<Integer> findSeamConflicts(int[] left, int[] right, SearchState state) {
+        Set<Integer> rightSet = toSet(right);
         Set<Integer> result = new HashSet<>();
 
         for (int rid : left) {
-            int cl = assignment.getOrDefault(rid, -1);
+            int cl = state.color[rid];
             if (cl == -1) continue;
-            for (int n : graph.getNeighbors(rid)) {
-                if (rightSet.contains(n) && assignment.getOrDefault(n, -1) == cl) {
+            for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+                int n = graph.neighborAt(j);
+                if (state.color[n] == cl && rightSet.contains(n)) {
                     result.add(rid);
                     result.add(n);
                 }
@@ -439,105 +2586,433 @@ class DivideAndConquerBot {
         return result;
     }
 
-    // standard backtracking for small problems or seam fixing
-    private boolean backtrack(List<Integer> ids, int index, Map<Integer, Integer> assignment) {
-        if (index == ids.size()) return true;
+    // entry point for the exhaustive searches (base case and seam repair)
+    private boolean search(int[] ids, SearchState state) {
+        // the searches reorder ids in place and freeIn hands out the tree's own arrays,
+        // which other threads and the memo index by position
+        ids = ids.clone();
+        if (searchMode == SearchMode.BACKJUMPING) return backjumpSearch(ids, state);
+        int used = symmetryBreaking ? usedAround(ids, state) : state.fullMask;
+        if (!propagation) return backtrack(ids, 0, state, used);
+
+        state.enterScope(ids);
+        int mark = state.mark();
+        boolean ok = state.propagateAll(ids) && backtrackPropagating(ids, 0, state, used);
+        state.undoTo(mark); // colors stay, pruning is only valid inside this scope
+        return ok;
+    }
+
+    // scratch for one conflict-directed backjumping search.
+    // conflict sets are bitsets over slots: slot 0 marks a set that leans on a colored
+    // region we have no slot for (never learned from), slots 1..fixed-1 are the colored
+    // regions around ids, and the slots after that are the search levels
+    private static final class Backjump {
+        final int[] levelVar;
+        final long[][] conf;
+        final int[] fixedRid;
+        final int levelBase;
+
+        Backjump(int levels, int[] fixedRid, int fixedCount) {
+            this.levelVar = new int[levels];
+            this.fixedRid = fixedRid;
+            this.levelBase = fixedCount + 1;
+            this.conf = new long[levels + 1][(levelBase + levels + 63) >>> 6];
+        }
+    }
 
-        // MRV  sort by most constrained
-        int bestIdx = index;
+    private boolean backjumpSearch(int[] ids, SearchState state) {
+        state.ensureBackjumping();
+        state.fixedStamp++;
+        int[] fixedRid = new int[16];
+        int fixedCount = 0;
+        for (int rid : ids) {
+            for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+                int nb = graph.neighborAt(j);
+                if (state.color[nb] == -1 || state.fixedMark[nb] == state.fixedStamp) continue;
+                state.fixedMark[nb] = state.fixedStamp;
+                state.fixedSlot[nb] = fixedCount + 1;
+                if (fixedCount == fixedRid.length) fixedRid = Arrays.copyOf(fixedRid, fixedCount * 2);
+                fixedRid[fixedCount++] = nb;
+            }
+        }
+
+        Backjump bj = new Backjump(ids.length, fixedRid, fixedCount);
+        boolean ok = backjump(ids, 0, state, bj);
+        for (int rid : ids) state.searchLevel[rid] = -1;
+        return ok;
+    }
+
+    // conflict-directed backjumping. on failure bj.conf[level] holds the slots that
+    // explain it; a parent not in that set is skipped entirely on the way back up
+    private boolean backjump(int[] ids, int level, SearchState state, Backjump bj) {
+        if (level == ids.length) return true;
+        long[] mine = bj.conf[level];
+        Arrays.fill(mine, 0L);
+        if (state.shouldStop()) return false;
+
+        // MRV  pick the most constrained
+        int bestIdx = level;
         int bestCount = Integer.MAX_VALUE;
-        for (int i = index; i < ids.size(); i++) {
-            int cnt = legalColors(ids.get(i), assignment).size();
+        for (int i = level; i < ids.length; i++) {
+            int cnt = Integer.bitCount(state.domain[ids[i]]);
             if (cnt < bestCount) {
                 bestCount = cnt;
                 bestIdx = i;
             }
         }
-        Collections.swap(ids, index, bestIdx);
-        int rid = ids.get(index);
+        swap(ids, level, bestIdx);
+        int x = ids[level];
+        bj.levelVar[level] = x;
+        state.searchLevel[x] = level;
+        int mySlot = bj.levelBase + level;
+
+        for (int c = 0; c < numColors; c++) {
+            if ((state.domain[x] & (1 << c)) == 0) {
+                addCulprit(x, c, state, bj, mine);
+                continue;
+            }
+            int lit = x * numColors + c;
+            int[] ng = nogoods.forbidding(lit, state.color);
+            if (ng != null) {
+                for (int other : ng) {
+                    if (other != lit) setBit(mine, slotOf(other / numColors, state, bj));
+                }
+                continue;
+            }
 
-        List<Integer> legal = legalColors(rid, assignment);
-        for (int color : legal) {
-            assignment.put(rid, color);
-            if (backtrack(ids, index + 1, assignment)) return true;
-            assignment.put(rid, -1); // undo
+            state.assign(x, c);
+            if (backjump(ids, level + 1, state, bj)) return true;
+            state.unassign(x);
+            if (state.stopped) break;
+
+            long[] child = bj.conf[level + 1];
+            if (!hasBit(child, mySlot)) {
+                // the failure below never depended on x: jump straight past it
+                System.arraycopy(child, 0, mine, 0, mine.length);
+                state.searchLevel[x] = -1;
+                swap(ids, level, bestIdx);
+                return false;
+            }
+            for (int w = 0; w < mine.length; w++) mine[w] |= child[w];
+            clearBit(mine, mySlot);
         }
 
-        // backtrack needs to restore order if we swapped?
-        // actually for this simple list it's fine as we just fail
-        Collections.swap(ids, index, bestIdx);
+        if (!state.stopped) learn(mine, state, bj);
+        state.searchLevel[x] = -1;
+        swap(ids, level, bestIdx);
         return false;
     }
 
-    private List<Integer> legalColors(int rid, Map<Integer, Integer> assignment) {
-        Set<Integer> used = new HashSet<>();
-        for (int n : graph.getNeighbors(rid)) {
-            int c = assignment.getOrDefault(n, -1);
-            if (c != -1) used.add(c);
+    // color c of x is taken by a neighbor: blame a colored region if there is one
+    // (those never force a jump), otherwise the earliest level that took it
+    private void addCulprit(int x, int c, SearchState state, Backjump bj, long[] set) {
+        int best = -1;
+        for (int j = graph.neighborStart(x), e = graph.neighborEnd(x); j < e; j++) {
+            int nb = graph.neighborAt(j);
+            if (state.color[nb] != c) continue;
+            int slot = slotOf(nb, state, bj);
+            if (slot < bj.levelBase) {
+                setBit(set, slot);
+                return;
+            }
+            if (best == -1 || slot < best) best = slot;
+        }
+        if (best != -1) setBit(set, best);
+    }
+
+    private int slotOf(int rid, SearchState state, Backjump bj) {
+        int level = state.searchLevel[rid];
+        if (level >= 0) return bj.levelBase + level;
+        if (state.fixedMark[rid] == state.fixedStamp) return state.fixedSlot[rid];
+        return 0;
+    }
+
+    // an exhausted level's conflict set is a nogood: those literals can never all hold
+    private void learn(long[] set, SearchState state, Backjump bj) {
+        if (hasBit(set, 0)) return;
+        int count = 0;
+        for (long w : set) count += Long.bitCount(w);
+        if (count == 0 || count > nogoods.maxLength) return;
+
+        int[] lits = new int[count];
+        int k = 0;
+        for (int w = 0; w < set.length; w++) {
+            for (long m = set[w]; m != 0; m &= m - 1) {
+                int slot = (w << 6) + Long.numberOfTrailingZeros(m);
+                int rid = slot < bj.levelBase ? bj.fixedRid[slot - 1] : bj.levelVar[slot - bj.levelBase];
+                lits[k++] = rid * numColors + state.color[rid];
+            }
         }
-        List<Integer> legal = new ArrayList<>();
-        for (int i = 0; i < numColors; i++) {
-            if (!used.contains(i)) legal.add(i);
+        Arrays.sort(lits);
+        nogoods.add(lits);
+    }
+
+    private static boolean hasBit(long[] set, int bit) { return (set[bit >>> 6] & (1L << bit)) != 0; }
+    private static void setBit(long[] set, int bit) { set[bit >>> 6] |= 1L << bit; }
+    private static void clearBit(long[] set, int bit) { set[bit >>> 6] &= ~(1L << bit); }
+
+    // colors already on the colored neighbors of ids
+    private static int usedAround(int[] ids, SearchState state) {
+        int used = 0;
+        for (int rid : ids) {
+            for (int j = state.graph.neighborStart(rid), e = state.graph.neighborEnd(rid); j < e; j++) {
+                int c = state.color[state.graph.neighborAt(j)];
+                if (c != -1) used |= 1 << c;
+            }
         }
-        return legal;
+        return used;
     }
 
-    private boolean isFullyValid(Map<Integer, Integer> assignment) {
-        for (Region r : graph.getRegions()) {
-            int c = assignment.getOrDefault(r.id, -1);
-            if (c == -1) return false;
-            for (int n : graph.getNeighbors(r.id)) {
-                if (assignment.getOrDefault(n, -1) == c) return false;
+    // color symmetry: a color that no colored region around ids uses and that the search has
+    // not handed out yet is interchangeable with every other such color, so only the lowest
+    // of them is tried. used holds the colors that are no longer interchangeable
+    private static int symmetricCandidates(int domain, int used, int fullMask) {
+        int fresh = ~used & fullMask;
+        return domain & (used | (fresh & -fresh));
+    }
+
+    // same search as backtrack, but every assignment is followed by forward checking
+    // and AC-3, so dead ends show up as soon as a region's live domain empties
+    private boolean backtrackPropagating(int[] ids, int index, SearchState state, int used) {
+        if (index == ids.length) return true;
+        if (state.shouldStop()) return false;
+
+        int bestIdx = index;
+        int bestCount = Integer.MAX_VALUE;
+        for (int i = index; i < ids.length; i++) {
+            int cnt = Integer.bitCount(state.live(ids[i]));
+            if (cnt < bestCount) {
+                bestCount = cnt;
+                bestIdx = i;
+                if (cnt == 0) return false;
+            }
+        }
+        swap(ids, index, bestIdx);
+        int rid = ids[index];
+
+        for (int m = symmetricCandidates(state.live(rid), used, state.fullMask); m != 0; m &= m - 1) {
+            int color = Integer.numberOfTrailingZeros(m);
+            int mark = state.mark();
+            state.assign(rid, color);
+            if (state.propagateFrom(rid) && backtrackPropagating(ids, index + 1, state, used | 1 << color)) return true;
+            state.unassign(rid);
+            state.undoTo(mark);
+        }
+
+        swap(ids, index, bestIdx);
+        return false;
+    }
+
+    // standard backtracking for small problems or seam fixing.
+    // ids[index..] are uncolored; domains come straight from the state masks
+    private boolean backtrack(int[] ids, int index, SearchState state, int used) {
+        if (index == ids.length) return true;
+        if (state.shouldStop()) return false;
+
+        // MRV  pick the most constrained
+        int bestIdx = index;
+        int bestCount = Integer.MAX_VALUE;
+        for (int i = index; i < ids.length; i++) {
+            int cnt = Integer.bitCount(state.domain[ids[i]]);
+            if (cnt < bestCount) {
+                bestCount = cnt;
+                bestIdx = i;
+                if (cnt == 0) return false; // dead region, fail fast
             }
         }
+        swap(ids, index, bestIdx);
+        int rid = ids[index];
+
+        for (int m = symmetricCandidates(state.domain[rid], used, state.fullMask); m != 0; m &= m - 1) {
+            int color = Integer.numberOfTrailingZeros(m);
+            state.assign(rid, color);
+            if (backtrack(ids, index + 1, state, used | 1 << color)) return true;
+            state.unassign(rid); // undo
+        }
+
+        swap(ids, index, bestIdx);
+        return false;
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    private static Set<Integer> toSet(int[] ids) {
+        Set<Integer> set = new HashSet<>();
+        for (int id : ids) set.add(id);
+        return set;
+    }
+
+    private static int[] toArray(Collection<Integer> ids) {
+        int[] a = new int[ids.size()];
+        int i = 0;
+        for (int id : ids) a[i++] = id;
+        return a;
+    }
+
+    private boolean isFullyValid(SearchState state) {
+        for (int rid = 0; rid < state.n; rid++) {
+            if (state.color[rid] == -1 || state.inConflict(rid)) return false;
+        }
         return true;
     }
 
     // fallback for when global solver fails
     // sometimes we just want a valid color locally even if we can't prove global validity
     public int findSimpleLocalColor(int rid) {
-        Set<Integer> used = new HashSet<>();
-        for (int n : graph.getNeighbors(rid)) {
-            int c = graph.getRegions().get(n).color;
-            if (c != -1) used.add(c);
-        }
-        for (int i = 0; i < numColors; i++) {
-            if (!used.contains(i)) return i;
-        }
-        return -1;
+        int avail = graph.availableMask(rid);
+        return avail == 0 ? -1 : Integer.numberOfTrailingZeros(avail);
     }
 
-    // attempts to find a color for targetRid that is valid globally
+    // attempts to find a color for targetRid that is valid globally.
+    // every candidate color runs as its own task on the pool, on its own state and stats;
+    // a success cancels only the higher colors, so the answer is always the lowest color
+    // that works, as before, and only its stats are published.
+    // -1 if none was found; lastResult then tells a proven failure from a timeout
     public int findBestColorForRegion(int targetRid) {
+        long start = System.nanoTime();
         List<Region> regions = graph.getRegions();
-        Map<Integer, Integer> baseAssignment = new HashMap<>();
-        for (Region r : regions) baseAssignment.put(r.id, r.color);
+        SearchState base = SearchState.fromGraph(graph);
 
-        Set<Integer> candidates = new HashSet<>();
-        for (int i = 0; i < numColors; i++) candidates.add(i);
+        int count = 0;
+        for (Region r : regions) {
+            if (!r.isLocked && r.color == -1 && r.id != targetRid) count++;
+        }
+        int[] freeIds = new int[count];
+        count = 0;
+        for (Region r : regions) {
+            if (!r.isLocked && r.color == -1 && r.id != targetRid) freeIds[count++] = r.id;
+        }
 
-        // remove neighbor colors
-        for (int n : graph.getNeighbors(targetRid)) {
-            int nc = baseAssignment.getOrDefault(n, -1);
-            if (nc != -1) candidates.remove(nc);
+        // candidates are the colors no neighbor uses
+        int candidates = base.domain[targetRid];
+        SearchState[] trials = new SearchState[numColors];
+        CancelToken[] tokens = new CancelToken[numColors];
+        for (int m = candidates; m != 0; m &= m - 1) {
+            int c = Integer.numberOfTrailingZeros(m);
+            tokens[c] = new CancelToken(moveToken);
+            trials[c] = new SearchState(base);
+            trials[c].cancel = tokens[c];
         }
 
-        for (int tryColor : candidates) {
-            Map<Integer, Integer> trial = new HashMap<>(baseAssignment);
-            trial.put(targetRid, tryColor);
+        boolean[] found = new boolean[numColors];
+        if (parallelCandidates && Integer.bitCount(candidates) > 1) {
+            List<ForkJoinTask<Boolean>> tasks = new ArrayList<>();
+            for (int m = candidates; m != 0; m &= m - 1) {
+                int c = Integer.numberOfTrailingZeros(m);
+                tasks.add(pool.submit(() -> tryCandidate(targetRid, c, trials, freeIds, tokens)));
+            }
+            int i = 0;
+            for (int m = candidates; m != 0; m &= m - 1) {
+                found[Integer.numberOfTrailingZeros(m)] = tasks.get(i++).join();
+            }
+        } else {
+            for (int m = candidates; m != 0; m &= m - 1) {
+                int c = Integer.numberOfTrailingZeros(m);
+                found[c] = tryCandidate(targetRid, c, trials, freeIds, tokens);
+                if (found[c]) break;
+            }
+        }
 
-            List<Integer> free = new ArrayList<>();
-            for (Region r : regions) {
-                if (!r.isLocked && r.color == -1 && r.id != targetRid) free.add(r.id);
+        for (int c = 0; c < numColors; c++) {
+            if (found[c]) {
+                System.out.println("Solution found with color " + c);
+                solution = trials[c];
+                solution.cancel = null;
+                publish(solution.stats);
+                finish(SolveResult.Status.SOLVED, solution, start);
+                return c;
             }
+        }
 
-            if (dcSolve(free, trial, 0) && isFullyValid(trial)) {
-                System.out.println("Solution found with color " + tryColor);
-                return tryColor;
+        // on a timeout the candidate that got furthest gives the partial
+        SearchState best = base;
+        if (moveToken != null && moveToken.isCancelled()) {
+            int bestDepth = -1;
+            for (int c = 0; c < numColors; c++) {
+                if (trials[c] == null || trials[c].stoppedColors == null) continue;
+                int depth = 0;
+                for (int col : trials[c].stoppedColors) if (col != -1) depth++;
+                if (depth > bestDepth) {
+                    bestDepth = depth;
+                    best = trials[c];
+                }
             }
+            publish(best.stats != null ? best.stats : new RunStats());
+            finish(SolveResult.Status.TIMED_OUT, best, start);
+        } else {
+            // every candidate was refuted by propagation or an exhaustive check
+            publish(new RunStats());
+            finish(SolveResult.Status.UNSAT, best, start);
         }
         return -1;
     }
+
+    // solves trials[tryColor] with targetRid colored tryColor. a failure of the recursion
+    // is checked by exhaustiveCheck, whose state replaces the trial when it finds a solution
+    private boolean tryCandidate(int targetRid, int tryColor, SearchState[] trials, int[] freeIds, CancelToken[] tokens) {
+        SearchState trial = trials[tryColor];
+        trial.assign(targetRid, tryColor);
+
+        // cheap rejection: propagate the candidate over every free region first
+        if (propagation) {
+            trial.enterScope(freeIds);
+            int mark = trial.mark();
+            boolean consistent = trial.propagateAll(freeIds);
+            trial.undoTo(mark);
+            if (!consistent) return false;
+        }
+
+        if (!runDcSolve(trial) || !isFullyValid(trial)) {
+            if (trial.stopNow() || engine == Engine.SAT) return false;
+            SearchState check = SearchState.fromGraph(graph);
+            check.cancel = trial.cancel;
+            check.stats = trial.stats;
+            check.assign(targetRid, tryColor);
+            if (!exhaustiveCheck(check)) return false;
+            trials[tryColor] = check;
+        }
+
+        // a higher color can no longer be the answer
+        for (int c = tryColor + 1; c < tokens.length; c++) {
+            if (tokens[c] != null) tokens[c].cancel();
+        }
+        return true;
+    }
+}
+
+// outcome of a deadline-aware solve. colors is the full solution when SOLVED and the best
+// partial assignment otherwise (-1 = uncolored). apart from clashes already on the board
+// the partial never gives two neighbors the same color, but nothing proves it extends
+class SolveResult {
+    enum Status { SOLVED, UNSAT, TIMED_OUT }
+
+    public final Status status;
+    public final int[] colors;
+    public final int colored;
+    public final long elapsedMillis;
+
+    public SolveResult(Status status, int[] colors, long elapsedMillis) {
+        this.status = status;
+        this.colors = colors;
+        this.elapsedMillis = elapsedMillis;
+        int count = 0;
+        for (int c : colors) if (c != -1) count++;
+        this.colored = count;
+    }
+
+    public boolean solved() {
+        return status == Status.SOLVED;
+    }
+
+    public Map<Integer, Integer> toMap() {
+        Map<Integer, Integer> m = new HashMap<>();
+        for (int i = 0; i < colors.length; i++) m.put(i, colors[i]);
+        return m;
+    }
 }
 
 // class to return multiple values from the bot logic
@@ -570,56 +3045,106 @@ class BotStrategy {
     GameGraph graph;
     DivideAndConquerBot solver;
 
+    // above this many regions the exact solver is too slow per move and the bot plays
+    // from a local search assignment instead, see reactWithLocalSearch
+    int exactLimit = 5000;
+    MinConflictsSearch localSearch;
+    int[] lastLocalBest; // warm start for the next local search
+
+    // hard latency budget for one move on the exact path, 0 = none. when it runs out the
+    // solver stops and the bot plays from its best partial assignment, see fallbackColor
+    long moveBudgetMillis = 500;
+
+    // verdicts on the human's possible moves, worked out while they think
+    final MoveSafetyTable safety;
+
     public BotStrategy(GameGraph graph) {
         this.graph = graph;
         this.solver = new DivideAndConquerBot(graph);
+        this.safety = new MoveSafetyTable(graph);
+    }
+
+    public void setExactLimit(int regions) { this.exactLimit = regions; }
+    public void setMoveBudget(long millis) { this.moveBudgetMillis = millis; }
+
+    // for a bot playing on its own copy of the board: takes over a snapshot of the real
+    // one. anything beyond the human move changing means the last solution is stale
+    public void syncBoard(int[] colors) {
+        if (graph.setColors(colors) > 1) solver.invalidateSolution();
     }
 
     public BotMoveResult reactToHumanMove(int humanRegionId) {
+        return reactToHumanMove(humanRegionId, null);
+    }
+
+    // cancel (may be null) stops the move early from another thread; the result of a
+    // cancelled move is a best guess and meant to be thrown away
+    public BotMoveResult reactToHumanMove(int humanRegionId, CancelToken cancel) {
+        BotMoveResult result = react(humanRegionId, cancel);
+        safety.sync(graph);
+        return result;
+    }
+
+    private BotMoveResult react(int humanRegionId, CancelToken cancel) {
         System.out.println("Bot is checking move on Region " + humanRegionId);
+        solver.beginMove(moveBudgetMillis, cancel);
 
         int humanColor = graph.getRegions().get(humanRegionId).color;
+        if (graph.size() > exactLimit) {
+            return reactWithLocalSearch(humanRegionId, humanColor, cancel);
+        }
+
+        // the speculative stage may already know the answer
+        BotMoveResult known = reactFromTable(humanRegionId, humanColor);
+        if (known != null) return known;
 
         // Check 1: did the human make a direct conflict?
         if (graph.inConflict(humanRegionId)) {
             System.out.println("Conflict detected! Attempting to fix...");
 
             // temporarily remove color to find best replacement
-            graph.getRegions().get(humanRegionId).color = -1;
+            graph.setColor(humanRegionId, -1);
             int betterColor = solver.findBestColorForRegion(humanRegionId);
 
-            // if global solver failed, try local fix (greedy)
+            // if global solver failed, try the partial result or a local fix (greedy)
             if (betterColor == -1) {
-                betterColor = solver.findSimpleLocalColor(humanRegionId);
-                if (betterColor != -1) System.out.println("Used local fix instead.");
+                solver.invalidateSolution();
+                betterColor = fallbackColor(humanRegionId);
             }
 
             if (betterColor == -1) {// stuck
-                graph.getRegions().get(humanRegionId).color = humanColor;
+                graph.setColor(humanRegionId, humanColor);
                 System.out.println("No solution found.");
                 return new BotMoveResult(false, humanRegionId, humanColor, humanColor,
                         null, -1, solver.lastPartitionA, solver.lastPartitionB, solver.lastBoundaryRegions);
             }
 
             // apply fix
-            graph.getRegions().get(humanRegionId).color = betterColor;
+            graph.setColor(humanRegionId, betterColor);
             System.out.println("Corrected to color " + betterColor);
 
             return new BotMoveResult(true, humanRegionId, humanColor, betterColor, null, -1, solver.lastPartitionA, solver.lastPartitionB, solver.lastBoundaryRegions);
         }
 
         // Step 2: Human move is valid locally, but does it block the future?
-        Map<Integer, Integer> solution = solver.solve();
+        // repairs the previous solution around the move instead of solving from scratch
+        boolean solvable = solver.solveIncremental(humanRegionId);
+        boolean timedOut = !solvable && solver.lastResult.status == SolveResult.Status.TIMED_OUT;
 
-        if (solution != null) {
+        // a timeout proves nothing, so the move stands and the bot plays from the partial
+        if (solvable || timedOut) {
             // All good, bot makes a move
-            System.out.println("Move accepted.");
+            System.out.println(solvable ? "Move accepted." : "Out of time, move accepted without a proof.");
             Integer bRid = pickMostConstrained();
             int bColor = -1;
             if (bRid != null) {
-                bColor = solution.get(bRid);
-                graph.getRegions().get(bRid).color = bColor;
-                System.out.println("Bot colored Region " + bRid);
+                bColor = solvable ? solver.solutionColor(bRid) : fallbackColor(bRid);
+                if (bColor != -1) {
+                    graph.setColor(bRid, bColor);
+                    System.out.println("Bot colored Region " + bRid);
+                } else {
+                    bRid = null;
+                }
             }
             return new BotMoveResult(false, humanRegionId, humanColor, humanColor, bRid, bColor, solver.lastPartitionA, solver.lastPartitionB, solver.lastBoundaryRegions);
         }
@@ -627,32 +3152,177 @@ class BotStrategy {
         // Step 3: It blocks the future, so we must change it
         System.out.println("Move leads to dead end. Correcting...");
 
-        graph.getRegions().get(humanRegionId).color = -1;
+        graph.setColor(humanRegionId, -1);
         int betterColor = solver.findBestColorForRegion(humanRegionId);
 
-        // try local fix if global failed
+        // try the partial result or a local fix if global failed
         if (betterColor == -1) {
-            betterColor = solver.findSimpleLocalColor(humanRegionId);
+            solver.invalidateSolution();
+            betterColor = fallbackColor(humanRegionId);
         }
 
         if (betterColor == -1) {
-            graph.getRegions().get(humanRegionId).color = humanColor;
+            graph.setColor(humanRegionId, humanColor);
             return new BotMoveResult(false, humanRegionId, humanColor, humanColor, null, -1, solver.lastPartitionA, solver.lastPartitionB, solver.lastBoundaryRegions);
         }
 
-        graph.getRegions().get(humanRegionId).color = betterColor;
+        graph.setColor(humanRegionId, betterColor);
 
         return new BotMoveResult(true, humanRegionId, humanColor, betterColor,
                 null, -1, solver.lastPartitionA, solver.lastPartitionB, solver.lastBoundaryRegions);
     }
 
+    // answers from the safety table if it was filled for the board just before the move:
+    // a safe move is accepted and the bot plays from its witness, a conflict or dead end
+    // is corrected to the lowest color that works (see MoveSafetyTable.safeColor).
+    // null if it can't tell. no solve runs, so the GUI gets the board's top-level split
+    // and no seams
+    private BotMoveResult reactFromTable(int humanRegionId, int humanColor) {
+        if (!safety.isBoardBefore(graph, humanRegionId)) return null;
+        MoveSafetyTable.Safety verdict = safety.safety(humanRegionId, humanColor);
+        int finalColor = verdict == MoveSafetyTable.Safety.SAFE ? humanColor : safety.safeColor(humanRegionId);
+        if (verdict == MoveSafetyTable.Safety.UNKNOWN || finalColor == -1) return null;
+        int[] witness = safety.witness(humanRegionId, finalColor);
+
+        if (finalColor != humanColor) {
+            System.out.println(verdict == MoveSafetyTable.Safety.DEAD_END
+                    ? "Move leads to dead end (precomputed). Correcting..."
+                    : "Conflict detected (precomputed). Fixing...");
+            graph.setColor(humanRegionId, finalColor);
+            solver.useSolution(witness);
+            solver.publishBoardSplit();
+            System.out.println("Corrected to color " + finalColor);
+            return new BotMoveResult(true, humanRegionId, humanColor, finalColor, null, -1, solver.lastPartitionA, solver.lastPartitionB, solver.lastBoundaryRegions);
+        }
+
+        System.out.println("Move accepted (precomputed).");
+        solver.useSolution(witness);
+        Integer bRid = pickMostConstrained();
+        int bColor = -1;
+        if (bRid != null) {
+            bColor = witness[bRid];
+            graph.setColor(bRid, bColor);
+            System.out.println("Bot colored Region " + bRid);
+        }
+        solver.publishBoardSplit();
+        return new BotMoveResult(false, humanRegionId, humanColor, humanColor, bRid, bColor, solver.lastPartitionA, solver.lastPartitionB, solver.lastBoundaryRegions);
+    }
+
+    // speculative stage for the human's thinking time: classifies the (free region, color)
+    // moves of the current board until all are known or cancel fires. it shares the solver
+    // with reactToHumanMove, so both must run on the same thread
+    public void precompute(CancelToken cancel) {
+        if (graph.size() > exactLimit) return;
+        safety.sync(graph);
+        solver.beginMove(0, cancel);
+        int k = graph.getNumColors();
+        while (!cancel.isCancelled()) {
+            int move = safety.nextUnknown();
+            if (move < 0) return;
+            int rid = move / k, c = move % k;
+            SolveResult r = solver.probe(rid, c, moveBudgetMillis);
+            if (r.status == SolveResult.Status.SOLVED) {
+                safety.addWitness(r.colors);
+            } else if (r.status == SolveResult.Status.UNSAT) {
+                // probe only answers UNSAT with a proof, anything weaker stays unknown
+                safety.markDead(rid, c);
+            } else if (!cancel.isCancelled()) {
+                safety.markTried(rid, c);
+            }
+        }
+    }
+
+    // same game rules, but every answer comes from min-conflicts on the whole board.
+    // it is a hint rather than a proof: an accepted move can still be a dead end
+    private BotMoveResult reactWithLocalSearch(int humanRegionId, int humanColor, CancelToken cancel) {
+        Set<Integer> none = new HashSet<>();
+        if (graph.inConflict(humanRegionId)) {
+            System.out.println("Conflict detected! Asking local search for a replacement...");
+            graph.setColor(humanRegionId, -1);
+            int[] best = runLocalSearch(cancel);
+            int betterColor = best[humanRegionId];
+            if ((graph.availableMask(humanRegionId) & (1 << betterColor)) == 0) {
+                betterColor = solver.findSimpleLocalColor(humanRegionId);
+            }
+            if (betterColor == -1) {
+                graph.setColor(humanRegionId, humanColor);
+                System.out.println("No solution found.");
+                return new BotMoveResult(false, humanRegionId, humanColor, humanColor, null, -1, none, none, none);
+            }
+            graph.setColor(humanRegionId, betterColor);
+            System.out.println("Corrected to color " + betterColor);
+            return new BotMoveResult(true, humanRegionId, humanColor, betterColor, null, -1, none, none, none);
+        }
+
+        int[] best = runLocalSearch(cancel);
+        if (!localSearch.solved()) {
+            System.out.println("Could not confirm the move, " + localSearch.bestConflicts + " conflicts left.");
+        }
+        System.out.println("Move accepted.");
+        Integer bRid = pickMostConstrained();
+        int bColor = -1;
+        if (bRid != null) {
+            bColor = best[bRid];
+            if ((graph.availableMask(bRid) & (1 << bColor)) == 0) bColor = solver.findSimpleLocalColor(bRid);
+            if (bColor != -1) {
+                graph.setColor(bRid, bColor);
+                System.out.println("Bot colored Region " + bRid);
+            } else {
+                bRid = null;
+            }
+        }
+        return new BotMoveResult(false, humanRegionId, humanColor, humanColor, bRid, bColor, none, none, none);
+    }
+
+    // no proven color for rid: after a timeout the best partial assignment is the better
+    // guess when its color is still free next to rid, otherwise the first free color
+    private int fallbackColor(int rid) {
+        SolveResult result = solver.lastResult;
+        if (result != null && result.status == SolveResult.Status.TIMED_OUT) {
+            int c = result.colors[rid];
+            if (c != -1 && (graph.availableMask(rid) & (1 << c)) != 0) {
+                System.out.println("Used the best partial solution.");
+                return c;
+            }
+        }
+        int c = solver.findSimpleLocalColor(rid);
+        if (c != -1) System.out.println("Used local fix instead.");
+        return c;
+    }
+
+    // bounded by the move budget like the exact path, cancel (may be null) stops it sooner
+    private int[] runLocalSearch(CancelToken cancel) {
+        if (localSearch == null) localSearch = new MinConflictsSearch(graph);
+        localSearch.cancel = new CancelToken(cancel, moveBudgetMillis);
+        lastLocalBest = localSearch.run(lastLocalBest);
+        return lastLocalBest;
+    }
+
+    // suggests {region, color} for the player: the most constrained free region and its
+    // color in a full solution (the best partial one if the move budget ran out, or the
+    // best local search assignment on big maps)
+    public int[] hint() {
+        Integer rid = pickMostConstrained();
+        if (rid == null) return null;
+        int[] colors;
+        if (graph.size() > exactLimit) {
+            colors = runLocalSearch(null);
+        } else {
+            solver.beginMove(moveBudgetMillis);
+            SolveResult result = solver.solveWithin(0);
+            if (result.status == SolveResult.Status.UNSAT) return null;
+            colors = result.colors;
+        }
+        return colors[rid] == -1 ? null : new int[]{ rid, colors[rid] };
+    }
+
     // Heuristic: pick the hardest region to color next
     private Integer pickMostConstrained() {
         Integer best = null;
         int minAvail = Integer.MAX_VALUE;
         for (Region r : graph.getRegions()) {
             if (r.isLocked || r.color != -1) continue;
-            int a = graph.availableColors(r.id).size();
+            int a = graph.availableCount(r.id);
             if (a < minAvail) {
                 minAvail = a;
                 best = r.id;
@@ -662,19 +3332,66 @@ class BotStrategy {
     }
 
     public boolean isPuzzleSolved() {
-        for (Region r : graph.getRegions()) {
-            if (r.color == -1) return false;
-            if (graph.inConflict(r.id)) return false;
-        }
-        return true;
+        return graph.isSolved();
     }
 }
 
 public class MapColoring {
+    static final String USAGE = "usage: MapColoring [map file] [--seed N] [--size ROWSxCOLS] [--regions N] [--verify]";
+
+    // a saved map file is opened as it is (see MapFile), and read back in full first with
+    // --verify. otherwise a new map is generated,
+    // from --seed when one is given, so the same seed replays the same maps (see GameGUI.newMap)
     public static void main(String[] args) {
+        String file = null;
+        Long seed = null;
+        boolean verify = false;
+        int rows = 20, cols = 25, regions = 25;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--size":
+                        String[] size = args[++i].split("x");
+                        rows = Integer.parseInt(size[0]);
+                        cols = Integer.parseInt(size[1]);
+                        break;
+                    case "--regions":
+                        regions = Integer.parseInt(args[++i]);
+                        break;
+                    case "--verify":
+                        verify = true;
+                        break;
+                    default:
+                        file = args[i];
+                }
+            }
+        } catch (RuntimeException e) {
+            System.out.println(USAGE);
+            return;
+        }
+        if (rows <= 0 || cols <= 0 || (long) rows * cols > Integer.MAX_VALUE || regions <= 0 || regions > rows * cols) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        String mapFile = file;
+        Long mapSeed = seed;
+        boolean mapVerify = verify;
+        int mapRows = rows, mapCols = cols, mapRegions = regions;
         SwingUtilities.invokeLater(() -> {
             System.out.println("Starting Map Coloring Game...");
-            new GameGUI(25, 4, 20, 25).setVisible(true);
+            if (mapFile != null) {
+                try {
+                    new GameGUI(MapFile.load(Paths.get(mapFile), mapVerify)).setVisible(true);
+                    return;
+                } catch (IOException | IllegalArgumentException e) {
+                    System.out.println("Could not load " + mapFile + ": " + e.getMessage());
+                }
+            }
+            new GameGUI(mapRegions, 4, mapRows, mapCols, mapSeed).setVisible(true);
         });
     }
 }
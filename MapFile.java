@@ -0,0 +1,243 @@
+package game1;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// a map on disk, so big maps don't have to be generated again every session.
+// little-endian, every section starts on a multiple of 4 bytes:
+//
+//   header   HEADER_SIZE bytes: magic, version, rows, cols, regions, colors, run slots,
+//            a reserved int, then the file position of each section below as a long
+//   labels   rows * cols ints, the MapGrid row-major
+//   regions  REGION_INTS ints a region: color (-1 = none), flags (bit 0 = locked), area,
+//            centroid x, centroid y, first run slot, run count
+//   offsets  regions + 1 ints, then
+//   targets  offsets[regions] ints: the GameGraph csr adjacency
+//   runs     run slots * 3 ints: each region's row runs (row, start, end) back to back.
+//            a region's runs never cross a RUN_CHUNK boundary, the slots before it are
+//            left as zero padding instead
+//
+// load maps the file instead of reading it: the labels, the runs and the adjacency stay in
+// the page cache and are used in place, only the region records become objects, so a load
+// costs O(regions) however big the grid is. labels, region records and runs are mapped in
+// chunks, so they may be any size; offsets and targets are one mapping each and have to
+// stay under 2 GB
+class MapFile {
+    static final int MAGIC = 0x4D415043; // "MAPC"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 72;
+    static final int REGION_INTS = 7;
+    static final int FLAG_LOCKED = 1;
+    static final int MAX_COLORS = 31; // a search domain is one int bitmask
+    static final int CHUNK_SHIFT = 28; // 1 GB of labels or region records a mapping
+    static final int RUN_CHUNK = 1 << 27; // run slots a mapping, 1.5 GB
+
+    final MapGrid grid;
+    final GameGraph graph;
+
+    MapFile(MapGrid grid, GameGraph graph) {
+        this.grid = grid;
+        this.graph = graph;
+    }
+
+    public MapGrid getGrid() { return grid; }
+    public GameGraph getGraph() { return graph; }
+
+    // streams the grid, the board, its adjacency and the runs out through one small buffer
+    public static void save(Path path, MapGrid grid, GameGraph graph) throws IOException {
+        int rows = grid.getRows(), cols = grid.getCols(), n = graph.size();
+        List<Region> regions = graph.getRegions();
+
+        // first slot of every region's runs, moved up to the next chunk where it would straddle one
+        int[] firstRun = new int[n];
+        long slots = 0;
+        for (Region r : regions) {
+            int count = r.runCount();
+            if (count > RUN_CHUNK) throw new IOException("region " + r.id + " has too many runs to save");
+            if (slots % RUN_CHUNK + count > RUN_CHUNK) slots += RUN_CHUNK - slots % RUN_CHUNK;
+            firstRun[r.id] = (int) slots;
+            slots += count;
+            if (slots > Integer.MAX_VALUE) throw new IOException("map has too many runs to save");
+        }
+
+        long labelsPos = HEADER_SIZE;
+        long regionsPos = labelsPos + 4L * grid.cellCount();
+        long offsetsPos = regionsPos + 4L * REGION_INTS * n;
+        long targetsPos = offsetsPos + 4L * (n + 1);
+        long runsPos = targetsPos + 8L * graph.edgeCount();
+
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(cols).putInt(n).putInt(graph.getNumColors());
+            buf.putInt((int) slots).putInt(0);
+            buf.putLong(labelsPos).putLong(regionsPos).putLong(offsetsPos).putLong(targetsPos).putLong(runsPos);
+
+            for (int cell = 0, cells = grid.cellCount(); cell < cells; cell++) {
+                putInt(ch, buf, grid.regionAt(cell));
+            }
+            for (Region r : regions) {
+                putInt(ch, buf, r.color);
+                putInt(ch, buf, r.isLocked ? FLAG_LOCKED : 0);
+                putInt(ch, buf, r.getArea());
+                putInt(ch, buf, r.getCentroid().x);
+                putInt(ch, buf, r.getCentroid().y);
+                putInt(ch, buf, firstRun[r.id]);
+                putInt(ch, buf, r.runCount());
+            }
+            for (int rid = 0; rid <= n; rid++) {
+                putInt(ch, buf, graph.offsets.get(rid));
+            }
+            for (int i = 0, e = 2 * graph.edgeCount(); i < e; i++) {
+                putInt(ch, buf, graph.neighborAt(i));
+            }
+            long slot = 0;
+            for (Region r : regions) {
+                for (; slot < firstRun[r.id]; slot++) {
+                    putInt(ch, buf, 0);
+                    putInt(ch, buf, 0);
+                    putInt(ch, buf, 0);
+                }
+                for (int i = 0, count = r.runCount(); i < count; i++, slot++) {
+                    putInt(ch, buf, r.runRow(i));
+                    putInt(ch, buf, r.runStart(i));
+                    putInt(ch, buf, r.runEnd(i));
+                }
+            }
+            flush(ch, buf);
+        }
+        System.out.println("Saved " + rows + "x" + cols + " map with " + n + " regions to " + path);
+    }
+
+    private static void putInt(FileChannel ch, ByteBuffer buf, int v) throws IOException {
+        if (buf.remaining() < 4) flush(ch, buf);
+        buf.putInt(v);
+    }
+
+    private static void flush(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
+
+    // maps the file read-only; the mappings stay valid after the channel is closed.
+    // the header, the section bounds and the region records are always checked. verify
+    // also reads back every adjacency entry, label and run, an O(file) pass; without it
+    // those are trusted and a damaged file may only fail later, when they are used.
+    // whatever is checked ends in an IOException when it is damaged
+    public static MapFile load(Path path, boolean verify) throws IOException {
+        long t0 = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_SIZE) throw new IOException(path + " is not a map file");
+            ByteBuffer header = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC) throw new IOException(path + " is not a map file");
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException(path + " has map format version " + version + ", expected " + VERSION);
+            int rows = header.getInt(), cols = header.getInt(), n = header.getInt(), numColors = header.getInt();
+            int slots = header.getInt();
+            header.getInt();
+            long labelsPos = header.getLong(), regionsPos = header.getLong();
+            long offsetsPos = header.getLong(), targetsPos = header.getLong(), runsPos = header.getLong();
+            if (rows <= 0 || cols <= 0 || (long) rows * cols > Integer.MAX_VALUE) throw corrupt("bad grid size " + rows + "x" + cols);
+            if (n <= 0 || n > rows * cols) throw corrupt("bad region count " + n);
+            if (numColors <= 0 || numColors > MAX_COLORS) throw corrupt("bad color count " + numColors);
+            if (slots < 0) throw corrupt("bad run count " + slots);
+
+            IntBuffer[] labels = chunks(ch, labelsPos, (long) rows * cols, 1 << CHUNK_SHIFT, size);
+            IntBuffer[] meta = chunks(ch, regionsPos, (long) REGION_INTS * n, 1 << CHUNK_SHIFT, size);
+            IntBuffer[] runs = chunks(ch, runsPos, 3L * slots, 3 * RUN_CHUNK, size);
+            IntBuffer offsets = section(ch, offsetsPos, n + 1L, size);
+            if (offsets.get(0) != 0) throw corrupt("adjacency does not start at 0");
+            IntBuffer targets = section(ch, targetsPos, offsets.get(n), size);
+            if (verify) {
+                verifyAdjacency(n, offsets, targets);
+                verifyLabels(n, labels);
+            }
+
+            List<Region> regions = new ArrayList<>(n);
+            for (int rid = 0; rid < n; rid++) {
+                long at = (long) rid * REGION_INTS;
+                Region r = new Region(rid);
+                r.color = get(meta, at);
+                r.isLocked = (get(meta, at + 1) & FLAG_LOCKED) != 0;
+                r.area = get(meta, at + 2);
+                r.centroid = new Point(get(meta, at + 3), get(meta, at + 4));
+                int first = get(meta, at + 5), count = get(meta, at + 6);
+                if (r.color < -1 || r.color >= numColors) throw corrupt("bad color " + r.color + " of region " + rid);
+                if (r.area < 0) throw corrupt("bad area of region " + rid);
+                if (first < 0 || count < 0 || (long) first + count > slots
+                        || first % RUN_CHUNK + count > RUN_CHUNK) throw corrupt("bad runs of region " + rid);
+                if (count > 0) r.runs = runs[first / RUN_CHUNK].slice(3 * (first % RUN_CHUNK), 3 * count);
+                if (verify) verifyRuns(r, rows, cols);
+                regions.add(r);
+            }
+            MapFile map = new MapFile(new MapGrid(rows, cols, labels, CHUNK_SHIFT), new GameGraph(regions, offsets, targets, numColors));
+            System.out.println("Loaded " + rows + "x" + cols + " map with " + n + " regions from " + path
+                    + " in " + (System.nanoTime() - t0) / 1_000_000 + " ms");
+            return map;
+        }
+    }
+
+    private static void verifyAdjacency(int n, IntBuffer offsets, IntBuffer targets) throws IOException {
+        for (int rid = 0; rid < n; rid++) {
+            if (offsets.get(rid) > offsets.get(rid + 1)) throw corrupt("adjacency offsets go backwards at region " + rid);
+        }
+        for (int rid = 0; rid < n; rid++) {
+            for (int i = offsets.get(rid), e = offsets.get(rid + 1); i < e; i++) {
+                int nb = targets.get(i);
+                if (nb < 0 || nb >= n || nb == rid) throw corrupt("bad neighbor " + nb + " of region " + rid);
+            }
+        }
+    }
+
+    private static void verifyLabels(int n, IntBuffer[] labels) throws IOException {
+        for (IntBuffer chunk : labels) {
+            for (int i = 0, e = chunk.capacity(); i < e; i++) {
+                int rid = chunk.get(i);
+                if (rid < 0 || rid >= n) throw corrupt("bad region id " + rid + " in the labels");
+            }
+        }
+    }
+
+    private static void verifyRuns(Region r, int rows, int cols) throws IOException {
+        for (int i = 0, count = r.runCount(); i < count; i++) {
+            int row = r.runRow(i), start = r.runStart(i), end = r.runEnd(i);
+            if (row < 0 || row >= rows || start < 0 || start >= end || end > cols) throw corrupt("bad run of region " + r.id);
+        }
+    }
+
+    private static IOException corrupt(String what) {
+        return new IOException("corrupt map file: " + what);
+    }
+
+    private static int get(IntBuffer[] chunks, long i) {
+        return chunks[(int) (i >>> CHUNK_SHIFT)].get((int) (i & ((1 << CHUNK_SHIFT) - 1)));
+    }
+
+    // one section that has to fit a single mapping
+    private static IntBuffer section(FileChannel ch, long pos, long ints, long size) throws IOException {
+        if (4 * ints > Integer.MAX_VALUE) throw new IOException("map file section of " + 4 * ints + " bytes is too large to map");
+        IntBuffer[] one = chunks(ch, pos, ints, Integer.MAX_VALUE / 4, size);
+        return one.length == 0 ? IntBuffer.allocate(0) : one[0];
+    }
+
+    // a section mapped as consecutive chunks of chunkInts ints, the last one may be short
+    private static IntBuffer[] chunks(FileChannel ch, long pos, long ints, int chunkInts, long size) throws IOException {
+        if (ints < 0 || pos < HEADER_SIZE || pos % 4 != 0 || pos + 4 * ints > size) throw new IOException("map file is truncated or corrupt");
+        IntBuffer[] chunks = new IntBuffer[(int) ((ints + chunkInts - 1) / chunkInts)];
+        for (int i = 0; i < chunks.length; i++) {
+            long from = (long) i * chunkInts, len = Math.min(chunkInts, ints - from);
+            chunks[i] = ch.map(FileChannel.MapMode.READ_ONLY, pos + 4 * from, 4 * len).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,270 @@
+package game1;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// local search for maps too big for the exact solvers: min-conflicts with a tabu list
+// and random-walk moves. it never proves anything, it just returns the best coloring
+// it saw and how many conflicting borders that coloring still has.
+// regions colored on the board (locked clues and moves already played) never change
+class MinConflictsSearch {
+    final GameGraph graph;
+    final int n, k;
+
+    static final int SAMPLE = 64; // conflicted regions looked at per step once there are more
+
+    // settings
+    int maxRestarts = 4;
+    long maxSteps = 0;             // per restart, 0 = 100 per region but at least 200k
+    int tabuTenure = 10;           // steps a region may not go back to the color it left
+    double walkProbability = 0.02; // chance of a random recolor instead of the best one
+    Random random = new Random();
+    CancelToken cancel; // polled every few hundred steps, null = never cancelled
+
+    // result of the last run
+    public int[] bestColors;
+    public int bestConflicts = -1;
+    public long totalSteps = 0;
+    public int restartsUsed = 0;
+
+    // working assignment
+    final int[] color;
+    final boolean[] fixed;
+    final int[] count;     // count[r * k + c] = neighbors of r colored c
+    final long[] tabuUntil;
+    int conflicts = 0;     // borders whose two sides share a color
+
+    // free regions that touch a conflict, kept as an indexed set for O(1) picks
+    final int[] conflicted, position;
+    int conflictedSize = 0;
+
+    // changes since the best of this restart, replayed backwards to get back to it.
+    // once the log would outgrow a snapshot it is folded into restartBest (logSize -1)
+    int[] logRid, logColor;
+    int logSize = 0;
+    int[] restartBest;
+    int restartBestConflicts;
+
+    public MinConflictsSearch(GameGraph graph) {
+        this.graph = graph;
+        this.n = graph.size();
+        this.k = graph.getNumColors();
+        this.color = new int[n];
+        this.fixed = new boolean[n];
+        this.count = new int[n * k];
+        this.tabuUntil = new long[n * k];
+        this.conflicted = new int[n];
+        this.position = new int[n];
+        this.logRid = new int[Math.max(16, n)];
+        this.logColor = new int[logRid.length];
+    }
+
+    public void setMaxRestarts(int restarts) { this.maxRestarts = restarts; }
+    public void setMaxSteps(long steps) { this.maxSteps = steps; }
+    public void setTabuTenure(int steps) { this.tabuTenure = steps; }
+    public void setWalkProbability(double p) { this.walkProbability = p; }
+    public void setSeed(long seed) { this.random = new Random(seed); }
+
+    public boolean solved() { return bestConflicts == 0; }
+
+    // runs from the current board. warmStart (may be null) gives starting colors for the
+    // free regions, e.g. the best assignment of the previous move
+    public int[] run(int[] warmStart) {
+        if (k < 2) throw new IllegalArgumentException("local search needs at least two colors");
+        totalSteps = 0;
+        restartsUsed = 0;
+        bestColors = null;
+        bestConflicts = Integer.MAX_VALUE;
+
+        for (int restart = 0; restart <= maxRestarts; restart++) {
+            restartsUsed = restart;
+            initialize(restart == 0 ? warmStart : null);
+            search();
+            if (restartBestConflicts < bestConflicts) {
+                bestConflicts = restartBestConflicts;
+                bestColors = restartBest.clone();
+            }
+            if (bestConflicts == 0 || cancelled()) break;
+        }
+        System.out.println("Local search: " + bestConflicts + " conflicts left after "
+                + totalSteps + " steps, " + restartsUsed + " restarts");
+        return bestColors;
+    }
+
+    // fixed regions take their board color, free ones the warm start color if it has one,
+    // otherwise the least conflicting color, visited in random order
+    private void initialize(int[] warmStart) {
+        Arrays.fill(count, 0);
+        Arrays.fill(tabuUntil, 0);
+        Arrays.fill(color, -1);
+        conflicts = 0;
+        conflictedSize = 0;
+        logSize = 0;
+
+        for (Region r : graph.getRegions()) {
+            fixed[r.id] = r.color != -1;
+            if (fixed[r.id]) place(r.id, r.color);
+        }
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        for (int rid : order) {
+            if (fixed[rid]) continue;
+            int c = warmStart != null && warmStart[rid] != -1 ? warmStart[rid] : leastConflicting(rid);
+            place(rid, c);
+        }
+
+        for (int rid = 0; rid < n; rid++) refresh(rid);
+        restartBest = color.clone();
+        restartBestConflicts = conflicts;
+    }
+
+    private void search() {
+        long budget = maxSteps > 0 ? maxSteps : Math.max(200_000, 100L * n);
+        for (long step = 1; step <= budget && conflicts > 0 && conflictedSize > 0; step++) {
+            if ((step & 255) == 0 && cancelled()) break;
+            totalSteps++;
+            int rid, c;
+            if (random.nextDouble() < walkProbability) {
+                rid = conflicted[random.nextInt(conflictedSize)];
+                c = random.nextInt(k - 1);
+                if (c >= color[rid]) c++;
+            } else {
+                long move = bestMove(step);
+                if (move < 0) continue; // everything is tabu this step
+                rid = (int) (move >>> 32);
+                c = (int) move;
+            }
+            int old = color[rid];
+
+            recolor(rid, c);
+            tabuUntil[rid * k + old] = step + tabuTenure + random.nextInt(tabuTenure + 1);
+
+            if (conflicts < restartBestConflicts) {
+                restartBestConflicts = conflicts;
+                logSize = 0;
+                if (conflicts == 0) break;
+            }
+        }
+        // walk back to the best assignment of this restart
+        if (logSize >= 0) {
+            for (int i = logSize - 1; i >= 0; i--) recolor(logRid[i], logColor[i], false);
+        } else {
+            for (int rid = 0; rid < n; rid++) {
+                if (color[rid] != restartBest[rid]) recolor(rid, restartBest[rid], false);
+            }
+        }
+        logSize = 0;
+        restartBest = color.clone();
+    }
+
+    private boolean cancelled() {
+        return cancel != null && cancel.isCancelled();
+    }
+
+    // min-conflicts over the conflicted set (a random sample of it while it is big): the
+    // (region, color) change that removes the most conflicts, as rid << 32 | color.
+    // tabu changes only count if they would beat the best so far. -1 if all are tabu
+    private long bestMove(long step) {
+        long best = -1;
+        int bestDelta = Integer.MAX_VALUE, ties = 0;
+        boolean sampled = conflictedSize > SAMPLE;
+        int scan = sampled ? SAMPLE : conflictedSize;
+        for (int i = 0; i < scan; i++) {
+            int rid = sampled ? conflicted[random.nextInt(conflictedSize)] : conflicted[i];
+            int current = color[rid];
+            int base = count[rid * k + current];
+            for (int c = 0; c < k; c++) {
+                if (c == current) continue;
+                int delta = count[rid * k + c] - base;
+                boolean tabu = tabuUntil[rid * k + c] > step;
+                if (tabu && conflicts + delta >= restartBestConflicts) continue;
+                if (delta < bestDelta) {
+                    best = (long) rid << 32 | c;
+                    bestDelta = delta;
+                    ties = 1;
+                } else if (delta == bestDelta && random.nextInt(++ties) == 0) {
+                    best = (long) rid << 32 | c;
+                }
+            }
+        }
+        return best;
+    }
+
+    // color with the fewest neighbors using it, ties broken at random
+    private int leastConflicting(int rid) {
+        int best = -1, bestCount = Integer.MAX_VALUE, ties = 0;
+        for (int c = 0; c < k; c++) {
+            int cnt = count[rid * k + c];
+            if (cnt < bestCount) {
+                best = c;
+                bestCount = cnt;
+                ties = 1;
+            } else if (cnt == bestCount && random.nextInt(++ties) == 0) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private void recolor(int rid, int c) {
+        recolor(rid, c, true);
+    }
+
+    private void recolor(int rid, int c, boolean logged) {
+        if (logged) {
+            if (logSize == logRid.length) {
+                restartBest = color.clone();
+                for (int i = logSize - 1; i >= 0; i--) restartBest[logRid[i]] = logColor[i];
+                logSize = -1;
+            } else if (logSize >= 0) {
+                logRid[logSize] = rid;
+                logColor[logSize] = color[rid];
+                logSize++;
+            }
+        }
+        lift(rid);
+        place(rid, c);
+        refresh(rid);
+        for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+            refresh(graph.neighborAt(j));
+        }
+    }
+
+    private void place(int rid, int c) {
+        color[rid] = c;
+        conflicts += count[rid * k + c];
+        for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+            count[graph.neighborAt(j) * k + c]++;
+        }
+    }
+
+    private void lift(int rid) {
+        int c = color[rid];
+        color[rid] = -1;
+        for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+            count[graph.neighborAt(j) * k + c]--;
+        }
+        conflicts -= count[rid * k + c];
+    }
+
+    // keeps the conflicted set in line with rid's counters
+    private void refresh(int rid) {
+        boolean in = !fixed[rid] && color[rid] != -1 && count[rid * k + color[rid]] > 0;
+        boolean listed = conflictedSize > 0 && position[rid] < conflictedSize && conflicted[position[rid]] == rid;
+        if (in && !listed) {
+            position[rid] = conflictedSize;
+            conflicted[conflictedSize++] = rid;
+        } else if (!in && listed) {
+            int last = conflicted[--conflictedSize];
+            conflicted[position[rid]] = last;
+            position[last] = position[rid];
+        }
+    }
+}
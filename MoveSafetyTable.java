@@ -0,0 +1,167 @@
+package game1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// what the bot knows about every (free region, color) move on one board, filled in while
+// the human is thinking (see BotStrategy.precompute) and read by reactToHumanMove and the GUI.
+// a SAFE move comes with a witness, a full solution of the board that makes it. one witness
+// vouches for a move in every region at once, so a handful of solves covers most of the table.
+// the table keeps its own copy of the board, so it can be read from any thread
+class MoveSafetyTable {
+    enum Safety { UNKNOWN, SAFE, DIRECT_CONFLICT, DEAD_END }
+
+    static final int MAX_WITNESSES = 64;
+
+    final GameGraph graph; // topology only, the board the table is for lives in colors
+    final int n, k;
+    final int[] colors;
+    final List<int[]> witnesses = new ArrayList<>();
+    final int[] safeMask;  // bit c = some witness colors the region c
+    final int[] deadMask;  // bit c = the solver found no solution with this move
+    final int[] triedMask; // bit c = a check ran out of time, skipped until the board changes
+    int cursor = 0;        // where the background scan goes on
+
+    volatile int focus = -1; // region under the mouse, checked before the rest
+    Runnable listener;       // called after every new verdict, on the thread that found it
+
+    public MoveSafetyTable(GameGraph graph) {
+        this.graph = graph;
+        this.n = graph.size();
+        this.k = graph.getNumColors();
+        this.colors = graph.getColors();
+        this.safeMask = new int[n];
+        this.deadMask = new int[n];
+        this.triedMask = new int[n];
+    }
+
+    public void setFocus(int rid) { this.focus = rid; }
+    public void setListener(Runnable listener) { this.listener = listener; }
+
+    // catches up with the board one changed region at a time: a witness survives if it
+    // already had the new color, a dead end survives as long as colors were only added
+    public synchronized void sync(GameGraph board) {
+        boolean changed = false;
+        for (Region r : board.getRegions()) {
+            int rid = r.id, now = r.color, old = colors[rid];
+            if (old == now) continue;
+            changed = true;
+            if (now != -1) witnesses.removeIf(w -> w[rid] != now);
+            if (old != -1) Arrays.fill(deadMask, 0);
+            colors[rid] = now;
+        }
+        if (changed) {
+            rebuildSafe();
+            Arrays.fill(triedMask, 0);
+        }
+    }
+
+    // true if the table is for the board as it was just before rid got its color
+    public synchronized boolean isBoardBefore(GameGraph board, int rid) {
+        if (colors[rid] != -1) return false;
+        for (Region r : board.getRegions()) {
+            if (r.id != rid && r.color != colors[r.id]) return false;
+        }
+        return true;
+    }
+
+    public synchronized Safety safety(int rid, int c) {
+        if (colors[rid] != -1) return Safety.UNKNOWN;
+        if ((available(rid) & (1 << c)) == 0) return Safety.DIRECT_CONFLICT;
+        if ((safeMask[rid] & (1 << c)) != 0) return Safety.SAFE;
+        if ((deadMask[rid] & (1 << c)) != 0) return Safety.DEAD_END;
+        return Safety.UNKNOWN;
+    }
+
+    // lowest color that works for rid: a safe color with every color below it a conflict
+    // or a dead end. -1 if none is safe yet or a lower color is still unknown, so the
+    // answer never depends on the order the scan checked the colors in
+    public synchronized int safeColor(int rid) {
+        if (colors[rid] != -1 || safeMask[rid] == 0) return -1;
+        int c = Integer.numberOfTrailingZeros(safeMask[rid]);
+        int ruledOut = ~available(rid) | deadMask[rid];
+        return ((1 << c) - 1 & ~ruledOut) == 0 ? c : -1;
+    }
+
+    // a full solution of the board with rid colored c, null if the table has none
+    public synchronized int[] witness(int rid, int c) {
+        for (int[] w : witnesses) {
+            if (w[rid] == c) return w;
+        }
+        return null;
+    }
+
+    // next move to check as rid * k + c, the focus region first. -1 once all are known
+    public synchronized int nextUnknown() {
+        int f = focus;
+        if (f >= 0 && f < n) {
+            int c = unknownColor(f);
+            if (c != -1) return f * k + c;
+        }
+        for (int i = 0; i < n; i++) {
+            int rid = (cursor + i) % n;
+            int c = unknownColor(rid);
+            if (c != -1) {
+                cursor = rid;
+                return rid * k + c;
+            }
+        }
+        return -1;
+    }
+
+    public void addWitness(int[] w) {
+        synchronized (this) {
+            if (witnesses.size() == MAX_WITNESSES) {
+                witnesses.remove(0);
+                rebuildSafe();
+            }
+            witnesses.add(w);
+            for (int rid = 0; rid < n; rid++) {
+                if (colors[rid] == -1) safeMask[rid] |= 1 << w[rid];
+            }
+        }
+        notifyListener();
+    }
+
+    public void markDead(int rid, int c) {
+        synchronized (this) {
+            deadMask[rid] |= 1 << c;
+        }
+        notifyListener();
+    }
+
+    public synchronized void markTried(int rid, int c) {
+        triedMask[rid] |= 1 << c;
+    }
+
+    private void notifyListener() {
+        Runnable l = listener;
+        if (l != null) l.run();
+    }
+
+    private int unknownColor(int rid) {
+        if (colors[rid] != -1) return -1;
+        int open = available(rid) & ~safeMask[rid] & ~deadMask[rid] & ~triedMask[rid];
+        return open == 0 ? -1 : Integer.numberOfTrailingZeros(open);
+    }
+
+    // colors no neighbor has on the table's board
+    private int available(int rid) {
+        int used = 0;
+        for (int j = graph.neighborStart(rid), e = graph.neighborEnd(rid); j < e; j++) {
+            int c = colors[graph.neighborAt(j)];
+            if (c != -1) used |= 1 << c;
+        }
+        return ~used & ((1 << k) - 1);
+    }
+
+    private void rebuildSafe() {
+        Arrays.fill(safeMask, 0);
+        for (int[] w : witnesses) {
+            for (int rid = 0; rid < n; rid++) {
+                if (colors[rid] == -1) safeMask[rid] |= 1 << w[rid];
+            }
+        }
+    }
+}